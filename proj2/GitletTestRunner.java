@@ -0,0 +1,183 @@
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Runs the GitletTests suite split across several JVMs at once.
+ * <p>
+ * Gitlet fixes its working directory when the JVM starts, so tests can only
+ * run concurrently in separate processes. This runner deals the test
+ * methods round-robin into JOBS shards and runs each shard in its own JVM,
+ * whose working directory is a fresh `testing` directory next to its own
+ * copy of `test_files`, all under a temporary directory. Within a shard,
+ * tests run in order, each starting with an empty working directory as
+ * usual. Usage, from the proj2 directory, with the same class path as for
+ * GitletTests:
+ * <pre>
+ *     java -ea -Djava.security.manager=allow -cp CLASSPATH GitletTestRunner [JOBS]
+ * </pre>
+ * JOBS defaults to the number of available processors. Prints the output
+ * of each shard that failed, then a JUnit-style summary, and exits with
+ * status 1 if any test failed. The temporary directory of a failed run is
+ * kept for inspection.
+ */
+public class GitletTestRunner {
+    private static final String SHARD_FLAG = "--shard";
+    private static final String SUMMARY = "Tests run: %d, Failures: %d";
+    private static final String SOURCE_DIR = "test_files";
+    private static final String TESTING_DIR = "testing";
+
+    public static void main(String... args) throws Exception {
+        if (args.length == 2 && args[0].equals(SHARD_FLAG)) {
+            runShard(Set.of(args[1].split(",")));
+            return;
+        }
+        int jobs = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        System.exit(runAll(jobs) ? 0 : 1);
+    }
+
+    /**
+     * Runs all tests of GitletTests in JOBS child JVMs, and returns whether
+     * they all passed.
+     */
+    private static boolean runAll(int jobs) throws IOException, InterruptedException {
+        List<String> tests = new ArrayList<>();
+        for (Method method : GitletTests.class.getMethods()) {
+            if (method.isAnnotationPresent(org.junit.Test.class)) {
+                tests.add(method.getName());
+            }
+        }
+        tests.sort(Comparator.naturalOrder());
+        jobs = Math.max(1, Math.min(jobs, tests.size()));
+
+        long start = System.nanoTime();
+        Path root = Files.createTempDirectory("gitlet-tests");
+        List<Process> processes = new ArrayList<>();
+        List<Path> logs = new ArrayList<>();
+        for (int k = 0; k < jobs; k += 1) {
+            List<String> shard = new ArrayList<>();
+            for (int i = k; i < tests.size(); i += jobs) {
+                shard.add(tests.get(i));
+            }
+            Path dir = root.resolve("shard" + k);
+            Path testing = Files.createDirectories(dir.resolve(TESTING_DIR));
+            copyTree(Path.of(SOURCE_DIR), dir.resolve(SOURCE_DIR));
+            Path log = dir.resolve("output.txt");
+            logs.add(log);
+            processes.add(new ProcessBuilder(childCommand(String.join(",", shard)))
+                    .directory(testing.toFile())
+                    .redirectErrorStream(true)
+                    .redirectOutput(log.toFile())
+                    .start());
+        }
+
+        int run = 0, failures = 0;
+        boolean ok = true;
+        for (int k = 0; k < jobs; k += 1) {
+            int status = processes.get(k).waitFor();
+            String output = Files.readString(logs.get(k));
+            Matcher summary = Pattern.compile(SUMMARY.replace("%d", "(\\d+)"))
+                    .matcher(output);
+            boolean found = false;
+            while (summary.find()) {
+                found = true;
+                run += Integer.parseInt(summary.group(1));
+                failures += Integer.parseInt(summary.group(2));
+            }
+            if (status != 0 || !found) {
+                ok = false;
+                System.out.printf("=== shard %d (exit status %d) ===%n%s%n", k, status, output);
+            }
+        }
+        System.out.printf("%nTime: %.3f%n", (System.nanoTime() - start) / 1e9);
+        if (ok) {
+            System.out.printf("%nOK (%d tests)%n", run);
+            deleteTree(root);
+        } else {
+            System.out.printf("%nFAILURES!!!%n" + SUMMARY + "%n", run, failures);
+            System.out.printf("Output kept in %s%n", root);
+        }
+        return ok;
+    }
+
+    /**
+     * Runs the tests of GitletTests named in TESTS in this JVM, printing
+     * failures and a summary line.
+     */
+    private static void runShard(Set<String> tests) {
+        // GitletTests captures System.out, so keep the original for the report.
+        PrintStream out = System.out;
+        Request request = Request.aClass(GitletTests.class).filterWith(new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                return description.getMethodName() == null
+                        || tests.contains(description.getMethodName());
+            }
+
+            @Override
+            public String describe() {
+                return "tests " + tests;
+            }
+        });
+        Result result = new JUnitCore().run(request);
+        for (Failure failure : result.getFailures()) {
+            out.println(failure.getTestHeader());
+            out.println(failure.getTrace());
+        }
+        out.printf(SUMMARY + "%n", result.getRunCount(), result.getFailureCount());
+        out.flush();
+        System.exit(result.wasSuccessful() ? 0 : 1);
+    }
+
+    /**
+     * Returns the command that runs the tests named in TESTS (separated by
+     * commas) in a JVM like this one.
+     */
+    private static List<String> childCommand(String tests) {
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path")
+                .split(File.pathSeparator)) {
+            classPath.add(Path.of(entry).toAbsolutePath().toString());
+        }
+        return List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-ea", "-Djava.security.manager=allow",
+                "-cp", String.join(File.pathSeparator, classPath),
+                GitletTestRunner.class.getName(), SHARD_FLAG, tests);
+    }
+
+    /** Copies the directory tree SOURCE to TARGET. */
+    private static void copyTree(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.toList()) {
+                Files.copy(path, target.resolve(source.relativize(path).toString()));
+            }
+        }
+    }
+
+    /** Deletes the directory tree ROOT. */
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
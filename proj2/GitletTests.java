@@ -14,17 +14,22 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.Permission;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -62,7 +67,8 @@ public class GitletTests {
     static final String ARBLINES = "(?:(?:.|\\n)*(?:\\n|\\Z)|\\A|\\Z)";
 
     private static final String COMMAND_BASE = "java gitlet.Main ";
-    private static final int DELAY_MS = 150;
+    private static final int MTIME_POLL_MS = 1;
+    private static final String MTIME_PROBE = ".mtime-probe";
     private static final String TESTING_DIR = "testing";
 
     private static final PrintStream OG_OUT = System.out;
@@ -250,7 +256,26 @@ public class GitletTests {
     @Before
     public void startWithEmptyWD() throws IOException, InterruptedException {
         recursivelyCleanWD();
-        TimeUnit.MILLISECONDS.sleep(DELAY_MS);
+        awaitNextMtime();
+    }
+
+    /**
+     * Waits until the file system's clock has moved past the modification
+     * times of all files written so far, so that no file written by the
+     * next test can have the same modification time as one written by an
+     * earlier test. On file systems with fine-grained timestamps this
+     * returns almost at once; on coarse ones it waits for one tick, rather
+     * than for a fixed delay.
+     */
+    public static void awaitNextMtime() throws IOException, InterruptedException {
+        Path probe = Path.of(MTIME_PROBE);
+        Files.writeString(probe, "");
+        FileTime start = Files.getLastModifiedTime(probe);
+        do {
+            TimeUnit.MILLISECONDS.sleep(MTIME_POLL_MS);
+            Files.writeString(probe, "");
+        } while (Files.getLastModifiedTime(probe).compareTo(start) <= 0);
+        Files.delete(probe);
     }
 
     @After
@@ -927,6 +952,8 @@ public class GitletTests {
         gitletCommand(new String[]{"checkout", uid2, "--", "warg.txt"}, "File does not exist in that commit.");
         gitletCommand(new String[]{"checkout", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", "--", "wug.txt"},
                 "No commit with that id exists.");
+        gitletCommand(new String[]{"checkout", "z".repeat(40), "--", "wug.txt"},
+                "No commit with that id exists.");
         gitletCommand(new String[]{"checkout", uid2, "++", "wug.txt"}, "Incorrect operands.");
         gitletCommand(new String[]{"checkout", "foobar"}, "No such branch exists.");
         gitletCommand(new String[]{"checkout", "main"}, "No need to checkout the current branch.");
@@ -1499,4 +1526,594 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
+
+    @Test
+    public void test45_batchMode() throws IOException {
+        Files.writeString(Path.of("script.txt"), """
+                # Commands run by a single gitlet process.
+                init
+                add wug.txt
+                commit "added wug"
+                add missing.txt
+
+                commit 'version 2 of wug.txt'
+                checkout -- wug.txt
+                log
+                """);
+        writeFile(WUG, "wug.txt");
+        gitletCommandP(new String[]{"batch", "script.txt"}, """
+                File does not exist.
+                No changes added to the commit.
+                ===
+                ${HEADER}
+                ${DATE}
+                added wug
+
+                ===
+                ${HEADER}
+                ${DATE}
+                initial commit
+
+                """
+                .replace("${HEADER}", "commit [a-f0-9]+")
+                .replace("${DATE}", DATE));
+        assertFileEquals(WUG, "wug.txt");
+    }
+
+    @Test
+    public void test46_mergeNonOverlappingLines() {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(CONFLICT4, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f.txt"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(CONFLICT1, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line 2 of f.txt"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(CONFLICT5, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove line 4 of f.txt"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(CONFLICT2, "f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test47_mergeOverlappingLines() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(CONFLICT2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f.txt"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(CONFLICT5, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line 2 of f.txt"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(CONFLICT3, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line 2, add line 4"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertEquals("""
+                <<<<<<< HEAD
+                <<<<<<< HEAD
+                This is a wug.
+                =======
+                This is not a wug.
+                >>>>>>>
+                =======
+                This is a wug.
+                >>>>>>>
+                """, Files.readString(Path.of("f.txt")).replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void test48_remotes() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        // A copy of the new repository serves as the remote.
+        Files.createDirectory(Path.of("other"));
+        try (var paths = Files.walk(Path.of(".gitlet"))) {
+            for (Path path : paths.toList()) {
+                Files.copy(path, Path.of("other").resolve(path));
+            }
+        }
+        gitletCommand(new String[]{"branch", "old"}, "");
+        gitletCommand(new String[]{"add-remote", "R1", "other/.gitlet"}, "");
+        gitletCommand(new String[]{"add-remote", "R1", "other/.gitlet"},
+                      "A remote with that name already exists.");
+        gitletCommand(new String[]{"add-remote", "R2", "missing/.gitlet"}, "");
+        gitletCommand(new String[]{"push", "R2", "main"},
+                      "Remote directory not found.");
+        gitletCommand(new String[]{"rm-remote", "R2"}, "");
+        gitletCommand(new String[]{"rm-remote", "R2"},
+                      "A remote with that name does not exist.");
+        writeFile(WUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add wug.txt"}, "");
+        gitletCommand(new String[]{"push", "R1", "main"}, "");
+        gitletCommand(new String[]{"fetch", "R1", "other"},
+                      "That remote does not have that branch.");
+        gitletCommand(new String[]{"checkout", "old"}, "");
+        writeFile(NOTWUG, "notwug.txt");
+        gitletCommand(new String[]{"add", "notwug.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add notwug.txt"}, "");
+        gitletCommand(new String[]{"push", "R1", "main"},
+                      "Please pull down remote changes before pushing.");
+        gitletCommand(new String[]{"pull", "R1", "main"}, "");
+        assertFileEquals(WUG, "wug.txt");
+        assertFileEquals(NOTWUG, "notwug.txt");
+        gitletCommand(new String[]{"push", "R1", "main"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"rm-branch", "R1/main"}, "");
+        gitletCommand(new String[]{"fetch", "R1", "main"}, "");
+        gitletCommand(new String[]{"merge", "R1/main"},
+                      "Current branch fast-forwarded.");
+        assertFileEquals(NOTWUG, "notwug.txt");
+        gitletCommandP(new String[]{"log"}, """
+                ===
+                commit [a-f0-9]+
+                Merge: [a-f0-9]{7} [a-f0-9]{7}
+                ${DATE}
+                Merged R1/main into old.
+
+                (?s:.*)"""
+                .replace("${DATE}", DATE));
+    }
+
+    @Test
+    public void test49_gc() {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add wug.txt"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(NOTWUG, "notwug.txt");
+        gitletCommand(new String[]{"add", "notwug.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add notwug.txt"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"rm-branch", "other"}, "");
+        gitletCommandP(new String[]{"gc"},
+                "Removed 3 unreachable objects, reclaiming [1-9][0-9]* bytes.");
+        gitletCommand(new String[]{"gc"},
+                "Removed 0 unreachable objects, reclaiming 0 bytes.");
+        gitletCommand(new String[]{"find", "Add notwug.txt"},
+                "Found no commit with that message.");
+        deleteFile("wug.txt");
+        gitletCommand(new String[]{"checkout", "--", "wug.txt"}, "");
+        assertFileEquals(WUG, "wug.txt");
+    }
+
+    @Test
+    public void test50_lock() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        // While the repository is locked (here, by this process), commands
+        // give up instead of running.
+        try (FileChannel lock = FileChannel.open(Path.of(".gitlet", "lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock held = lock.lock()) {
+            assertTrue(held.isValid());
+            gitletCommand(new String[]{"status"},
+                    "Another gitlet command is using this repository.");
+            gitletCommand(new String[]{"branch", "other"},
+                    "Another gitlet command is using this repository.");
+        }
+        gitletCommand(new String[]{"branch", "other"}, "");
+        // A command that finds the id of a dead holder in the lock file
+        // discards that holder's temporary files, but keeps working files
+        // its checkout had moved aside.
+        Path scratch = Path.of(".gitlet", "checkout");
+        Files.createDirectory(scratch);
+        Files.writeString(scratch.resolve("0"), "temporary");
+        Files.writeString(Path.of(".gitlet", "lock"), "999999999");
+        gitletCommand(new String[]{"branch", "second"}, "");
+        assertFalse(Files.exists(scratch.resolve("0")));
+        Files.writeString(scratch.resolve("1"), "temporary");
+        Files.writeString(scratch.resolve("old0"), "moved aside");
+        Files.writeString(Path.of(".gitlet", "lock"), "999999999");
+        runGitletCommand(new String[]{"branch", "third"});
+        checkOutputRegex("An interrupted gitlet command \\(process 999999999"
+                + "\\) left working files it had moved aside in .*checkout"
+                + "\\.1\\.");
+        Path saved = Path.of(".gitlet", "checkout.1");
+        assertEquals("moved aside",
+                Files.readString(saved.resolve("old0")));
+        assertFalse(Files.exists(saved.resolve("1")));
+        assertFalse(Files.exists(scratch));
+        gitletCommand(new String[]{"branch", "fourth"}, "");
+        Files.writeString(Path.of(".gitlet", "config"),
+                "core.lockTimeout=soon\n");
+        gitletCommand(new String[]{"log"}, "Invalid lock timeout: soon");
+    }
+
+    @Test
+    public void test51_pathLog() {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "wug.txt");
+        writeFile(A, "a.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"add", "a.txt"}, "");
+        gitletCommand(new String[]{"commit", "add wug and a"}, "");
+        writeFile(B, "a.txt");
+        gitletCommand(new String[]{"add", "a.txt"}, "");
+        gitletCommand(new String[]{"commit", "change a"}, "");
+        writeFile(NOTWUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "change wug"}, "");
+        gitletCommand(new String[]{"rm", "a.txt"}, "");
+        gitletCommand(new String[]{"commit", "remove a"}, "");
+        gitletCommandP(new String[]{"log", "--", "wug.txt"}, """
+                ===
+                ${HEADER}
+                ${DATE}
+                change wug
+
+                ===
+                ${HEADER}
+                ${DATE}
+                add wug and a
+
+                """
+                .replace("${HEADER}", "commit [a-f0-9]+")
+                .replace("${DATE}", DATE));
+        gitletCommandP(new String[]{"log", "--", "a.txt"}, """
+                ===
+                ${HEADER}
+                ${DATE}
+                remove a
+
+                ===
+                ${HEADER}
+                ${DATE}
+                change a
+
+                ===
+                ${HEADER}
+                ${DATE}
+                add wug and a
+
+                """
+                .replace("${HEADER}", "commit [a-f0-9]+")
+                .replace("${DATE}", DATE));
+        gitletCommand(new String[]{"log", "--", "b.txt"}, "");
+        gitletCommand(new String[]{"log", "wug.txt"}, "Incorrect operands.");
+    }
+
+    @Test
+    public void test52_renames() throws IOException, InterruptedException {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "wug.txt");
+        writeFile(A, "a.txt");
+        writeFile(B, "b.txt");
+        // Let the stat cache trust what add records about these files.
+        awaitNextMtime();
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"add", "a.txt"}, "");
+        gitletCommand(new String[]{"add", "b.txt"}, "");
+        gitletCommand(new String[]{"commit", "three files"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"rm", "a.txt"}, "");
+        writeFile(A, "c.txt");
+        gitletCommand(new String[]{"add", "c.txt"}, "");
+        writeFile(B, "d.txt");
+        gitletCommand(new String[]{"add", "d.txt"}, "");
+        Files.move(Path.of("wug.txt"), Path.of("moved.txt"));
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+                c.txt
+                d.txt
+
+                === Removed Files ===
+                a.txt
+
+                === Modifications Not Staged For Commit ===
+                wug.txt (deleted)
+
+                === Untracked Files ===
+                moved.txt
+
+                === Renamed and Copied Files ===
+                a.txt -> c.txt (renamed)
+                b.txt -> d.txt (copied)
+                wug.txt -> moved.txt (renamed, not staged)
+
+                """);
+        gitletCommand(new String[]{"rm", "wug.txt"}, "");
+        gitletCommand(new String[]{"add", "moved.txt"}, "");
+        gitletCommand(new String[]{"commit", "rename files"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(NOTA, "a.txt");
+        gitletCommand(new String[]{"add", "a.txt"}, "");
+        writeFile(WUG2, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "change a and wug"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileDoesNotExist("a.txt");
+        assertFileDoesNotExist("wug.txt");
+        assertFileEquals(NOTA, "c.txt");
+        assertFileEquals(B, "d.txt");
+        assertFileEquals(WUG2, "moved.txt");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        gitletCommand(new String[]{"rm", "b.txt"}, "");
+        writeFile(B, "e.txt");
+        gitletCommand(new String[]{"add", "e.txt"}, "");
+        gitletCommand(new String[]{"commit", "rename b"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        writeFile(NOTB, "b.txt");
+        gitletCommand(new String[]{"add", "b.txt"}, "");
+        gitletCommand(new String[]{"commit", "change b"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileDoesNotExist("b.txt");
+        assertFileEquals(NOTB, "e.txt");
+        assertFileEquals(B, "d.txt");
+    }
+
+    @Test
+    public void test53_trace() throws IOException, InterruptedException {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "wug.txt");
+        // The trace is configured by the environment, so run gitlet in a
+        // child process.
+        ProcessBuilder child = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "gitlet.Main", "add", "wug.txt")
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        child.environment().put("GITLET_TRACE", "json");
+        Process process = child.start();
+        String trace = new String(process.getErrorStream().readAllBytes());
+        assertEquals(0, process.waitFor());
+        String kind = "\\{\"count\": \\d+, \"bytes\": \\d+, \"ns\": \\d+\\}";
+        assertTrue("unexpected trace: " + trace, trace.strip().matches(
+                "\\{\"command\": \"add\", \"wall_ns\": \\d+, "
+                + "\"hash\": \\{\"count\": 1, \"bytes\": 15, \"ns\": \\d+\\}"
+                + "(, \"[a-z]+\": " + kind + ")*\\}"));
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                wug.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test54_checkoutRollback() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "wug.txt");
+        writeFile(A, "a.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"add", "a.txt"}, "");
+        gitletCommand(new String[]{"commit", "two files"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(NOTA, "a.txt");
+        gitletCommand(new String[]{"add", "a.txt"}, "");
+        Files.createDirectory(Path.of("dir"));
+        writeFile(B, "dir/b.txt");
+        gitletCommand(new String[]{"add", "dir/b.txt"}, "");
+        writeFile(WUG2, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "change files"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        assertFileDoesNotExist("dir");
+        // An untracked file where other needs a directory.
+        writeFile(C, "dir");
+        gitletCommand(new String[]{"checkout", "other"},
+                "There is an untracked file in the way; delete it, "
+                + "or add and commit it first.\n");
+        assertFileEquals(A, "a.txt");
+        assertFileEquals(WUG, "wug.txt");
+        assertFileEquals(C, "dir");
+        deleteFile("dir");
+        // A directory where other needs a file that is tracked here.
+        deleteFile("wug.txt");
+        Files.createDirectory(Path.of("wug.txt"));
+        gitletCommand(new String[]{"checkout", "other"},
+                "Could not update the working directory (unchanged): "
+                + "wug.txt is in the way of wug.txt\n");
+        assertFileEquals(A, "a.txt");
+        assertFileDoesNotExist("dir");
+        deleteFile("wug.txt");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertFileEquals(NOTA, "a.txt");
+        assertFileEquals(B, "dir/b.txt");
+        assertFileEquals(WUG2, "wug.txt");
+        // A tracked file that becomes a directory.
+        gitletCommand(new String[]{"branch", "dirs"}, "");
+        gitletCommand(new String[]{"checkout", "dirs"}, "");
+        gitletCommand(new String[]{"rm", "wug.txt"}, "");
+        Files.createDirectory(Path.of("wug.txt"));
+        writeFile(WUG, "wug.txt/inner.txt");
+        gitletCommand(new String[]{"add", "wug.txt/inner.txt"}, "");
+        gitletCommand(new String[]{"commit", "wug.txt becomes a directory"},
+                "");
+        deleteFile("wug.txt/inner.txt");
+        deleteFile("wug.txt");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertFileEquals(WUG2, "wug.txt");
+        gitletCommand(new String[]{"checkout", "dirs"}, "");
+        assertFileEquals(WUG, "wug.txt/inner.txt");
+        assertFileEquals(NOTA, "a.txt");
+    }
+
+    @Test
+    public void test55_deltaChains() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        // Versions of a file well over the 256 bytes below which blobs are
+        // never stored as deltas, and more of them than the 10 deltas
+        // allowed in a chain.  Random hexadecimal text deflates to only
+        // about half its size, so the pack stays small only if most
+        // versions are stored as deltas.
+        Random random = new Random(61);
+        String[] lines = new String[64];
+        for (int i = 0; i < lines.length; i += 1) {
+            lines[i] = Long.toHexString(random.nextLong());
+        }
+        int numVersions = 15;
+        List<String> versions = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int v = 0; v < numVersions; v += 1) {
+            lines[v * 7 % lines.length] = Long.toHexString(random.nextLong());
+            String contents = String.join("\n", lines) + "\nversion " + v
+                + "\n";
+            Files.writeString(Path.of("f.txt"), contents);
+            versions.add(contents);
+            gitletCommand(new String[]{"add", "f.txt"}, "");
+            gitletCommand(new String[]{"commit", "version " + v}, "");
+            ids.add(gitletCommandP(new String[]{"find", "version " + v},
+                                   "([0-9a-f]+)").group(1));
+        }
+        long packSize = Files.size(Path.of(".gitlet", "objects.pack"));
+        assertTrue("pack too large for deltas: " + packSize,
+                   packSize < 4 * versions.get(0).length());
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (int v = 0; v < numVersions; v += 1) {
+                gitletCommand(new String[]{"checkout", ids.get(v), "--",
+                                           "f.txt"}, "");
+                assertEquals(versions.get(v),
+                             Files.readString(Path.of("f.txt")));
+            }
+            // A repacked store keeps the deltas.
+            gitletCommand(new String[]{"gc"},
+                          "Removed 0 unreachable objects, reclaiming "
+                          + "0 bytes.\n");
+        }
+    }
+
+    @Test
+    public void test56_nestedFiles() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        Files.createDirectories(Path.of("sub", "deeper"));
+        writeFile(WUG, "sub/wug.txt");
+        writeFile(A, "sub/deeper/a.txt");
+        writeFile(B, "b.txt");
+        gitletCommand(new String[]{"add", "sub/wug.txt"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                sub/wug.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+                b.txt
+                sub/deeper/a.txt
+
+                """);
+        gitletCommand(new String[]{"commit", "nested file"}, "");
+        writeFile(NOTWUG, "sub/wug.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                sub/wug.txt (modified)
+
+                === Untracked Files ===
+                b.txt
+                sub/deeper/a.txt
+
+                """);
+        writeFile(WUG, "sub/wug.txt");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        deleteFile("sub/deeper/a.txt");
+        deleteFile("sub/deeper");
+        writeFile(A, "sub/deeper");
+        gitletCommand(new String[]{"add", "sub/deeper"}, "");
+        gitletCommand(new String[]{"commit", "file named deeper"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        assertFileDoesNotExist("sub/deeper");
+        // An untracked file in a directory where other has a file.
+        Files.createDirectories(Path.of("sub", "deeper"));
+        writeFile(B, "sub/deeper/b.txt");
+        gitletCommand(new String[]{"checkout", "other"},
+                "There is an untracked file in the way; delete it, "
+                + "or add and commit it first.\n");
+        gitletCommand(new String[]{"merge", "other"},
+                "There is an untracked file in the way; delete it, "
+                + "or add and commit it first.\n");
+        assertFileEquals(B, "sub/deeper/b.txt");
+        deleteFile("sub/deeper/b.txt");
+        deleteFile("sub/deeper");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertFileEquals(A, "sub/deeper");
+        assertFileEquals(WUG, "sub/wug.txt");
+        // A merge that brings in a file under a new directory.
+        gitletCommand(new String[]{"branch", "side"}, "");
+        gitletCommand(new String[]{"checkout", "side"}, "");
+        Files.createDirectories(Path.of("d", "e"));
+        writeFile(C, "d/e/x.txt");
+        gitletCommand(new String[]{"add", "d/e/x.txt"}, "");
+        gitletCommand(new String[]{"commit", "add d/e/x.txt"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertFileDoesNotExist("d");
+        writeFile(NOTWUG, "sub/wug.txt");
+        gitletCommand(new String[]{"add", "sub/wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "change wug"}, "");
+        gitletCommand(new String[]{"merge", "side"}, "");
+        assertFileEquals(C, "d/e/x.txt");
+        // Restoring a single file whose directory has gone.
+        deleteFile("d/e/x.txt");
+        deleteFile("d/e");
+        deleteFile("d");
+        gitletCommand(new String[]{"checkout", "--", "d/e/x.txt"}, "");
+        assertFileEquals(C, "d/e/x.txt");
+        // A directory of tracked files that becomes a file.
+        gitletCommand(new String[]{"branch", "flat"}, "");
+        gitletCommand(new String[]{"checkout", "flat"}, "");
+        gitletCommand(new String[]{"rm", "d/e/x.txt"}, "");
+        assertFileDoesNotExist("d");
+        writeFile(NOTWUG, "d");
+        gitletCommand(new String[]{"add", "d"}, "");
+        gitletCommand(new String[]{"commit", "d becomes a file"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertFileEquals(C, "d/e/x.txt");
+        gitletCommand(new String[]{"checkout", "flat"}, "");
+        assertFileEquals(NOTWUG, "d");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        // And in a merge.
+        writeFile(WUG, "sub/wug.txt");
+        gitletCommand(new String[]{"add", "sub/wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "change wug back"}, "");
+        gitletCommand(new String[]{"merge", "flat"}, "");
+        assertFileEquals(NOTWUG, "d");
+        assertFileEquals(WUG, "sub/wug.txt");
+    }
 }
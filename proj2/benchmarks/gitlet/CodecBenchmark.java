@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.TreeMap;
+
+/** Compares the cost of round-tripping a Tree through its binary
+ *  encoding (Tree.encode/Tree.decode) with the cost of doing so through
+ *  Java serialization of its fields (Utils.serialize/Utils.deserialize).
+ *  Usage, from the proj2 directory:
+ *
+ *      javac -d out gitlet/*.java benchmarks/gitlet/*.java
+ *      java -cp out gitlet.CodecBenchmark [FILES [ITERATIONS]]
+ *
+ *  where FILES (default 100) is the number of files in the sample tree
+ *  and ITERATIONS (default 20000) the number of timed round trips
+ *  of each kind.  Prints the encoded size and the mean time per round trip
+ *  for each format.
+ */
+public class CodecBenchmark {
+
+    /** Run the benchmark with the optional arguments ARGS described
+     *  above. */
+    public static void main(String... args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Tree tree = sampleTree(files);
+        Fields fields = new Fields(tree);
+
+        byte[] encoded = tree.encode();
+        byte[] serialized = Utils.serialize(fields);
+        for (int i = 0; i < iterations; i += 1) {
+            Tree.decode(tree.encode());
+            Utils.deserialize(Utils.serialize(fields), Fields.class).tree();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i += 1) {
+            Tree.decode(tree.encode());
+        }
+        double binary = (System.nanoTime() - start) / (double) iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i += 1) {
+            Utils.deserialize(Utils.serialize(fields), Fields.class).tree();
+        }
+        double java = (System.nanoTime() - start) / (double) iterations;
+
+        System.out.printf("files: %d, iterations: %d%n", files, iterations);
+        System.out.printf("binary:       %7d bytes %10.0f ns/round trip%n",
+                          encoded.length, binary);
+        System.out.printf("serializable: %7d bytes %10.0f ns/round trip%n",
+                          serialized.length, java);
+        System.out.printf("speedup: %.1fx%n", java / binary);
+    }
+
+    /** Return a tree holding FILES files and a few subdirectories. */
+    private static Tree sampleTree(int files) {
+        TreeMap<String, String> blobs = new TreeMap<>(),
+            trees = new TreeMap<>();
+        for (int i = 0; i < files; i += 1) {
+            blobs.put("file" + i + ".txt", Utils.sha1("contents " + i));
+        }
+        for (int i = 0; i < 4; i += 1) {
+            trees.put("dir" + i, Utils.sha1("tree " + i));
+        }
+        return new Tree(blobs, trees);
+    }
+
+    /** The fields of a Tree, which is not itself Serializable. */
+    private static class Fields implements Serializable {
+        /** Version of this class's serialized form. */
+        private static final long serialVersionUID = 1L;
+
+        /** The tree's map of file names to blob ids. */
+        private final TreeMap<String, String> blobs;
+        /** The tree's map of subdirectory names to tree ids. */
+        private final TreeMap<String, String> trees;
+
+        /** The fields of TREE. */
+        Fields(Tree tree) {
+            blobs = new TreeMap<>(tree.blobs());
+            trees = new TreeMap<>(tree.trees());
+        }
+
+        /** Return the tree with these fields. */
+        Tree tree() {
+            return new Tree(blobs, trees);
+        }
+    }
+}
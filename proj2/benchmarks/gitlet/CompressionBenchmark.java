@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Measures the size of the pack and the throughput of storing and
+ *  reading blobs at several deflate levels, over a corpus made by scaling
+ *  up the files in test_files.  Usage, from the proj2 directory:
+ *
+ *      javac -d out gitlet/*.java benchmarks/gitlet/*.java
+ *      java -cp out gitlet.CompressionBenchmark [COPIES [REPEATS]]
+ *
+ *  Each level is run once untimed first, to warm up the JIT.  The
+ *  corpus holds COPIES (default 200) distinct blobs for each file in
+ *  test_files, each consisting of a line identifying the copy followed by
+ *  REPEATS (default 50) repetitions of the file's contents.  For each
+ *  level, prints the pack size, its ratio to the size of the corpus, and
+ *  the rate at which the corpus was stored (write and flush) and read
+ *  back, in MB of uncompressed contents per second.
+ */
+public class CompressionBenchmark {
+
+    /** The deflate levels compared. */
+    private static final String LEVELS = "0 1 6 9";
+
+    /** Run the benchmark with the optional arguments ARGS described
+     *  above. */
+    public static void main(String... args) throws IOException {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        List<byte[]> corpus = corpus(new File("test_files"), copies, repeats);
+        List<String> ids = new ArrayList<>();
+        long total = 0;
+        for (byte[] blob : corpus) {
+            ids.add(Utils.sha1(blob));
+            total += blob.length;
+        }
+        System.out.printf("corpus: %d blobs, %d bytes%n", corpus.size(),
+                          total);
+        for (String level : LEVELS.split(" ")) {
+            measure(Integer.parseInt(level), corpus, ids, total);
+        }
+        System.out.printf("%5s %12s %7s %12s %12s%n",
+                          "level", "pack bytes", "ratio", "store MB/s",
+                          "read MB/s");
+        for (String level : LEVELS.split(" ")) {
+            System.out.println(measure(Integer.parseInt(level), corpus, ids,
+                                       total));
+        }
+    }
+
+    /** Store the blobs CORPUS, whose ids are IDS and whose total size is
+     *  TOTAL, in a new pack at deflate level LEVEL, read them back, and
+     *  return a line of the results table. */
+    private static String measure(int level, List<byte[]> corpus,
+                                  List<String> ids, long total)
+        throws IOException {
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        File pack = new File(dir, "objects.pack"),
+            index = new File(dir, "objects.idx");
+        long start = System.nanoTime();
+        PackStore store = new PackStore(pack, index, level, new Trace(null));
+        for (int i = 0; i < corpus.size(); i += 1) {
+            store.write(ids.get(i), PackStore.BLOB, corpus.get(i));
+        }
+        Transaction txn = new Transaction(new File(dir, "transaction"), true,
+                                          new Trace(null));
+        store.flush(txn);
+        txn.commit();
+        double storeSecs = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        store = new PackStore(pack, index, level, new Trace(null));
+        long read = 0;
+        for (String id : ids) {
+            read += store.read(id).length;
+        }
+        double readSecs = (System.nanoTime() - start) / 1e9;
+        if (read != total) {
+            throw new IllegalStateException("read back wrong contents");
+        }
+        String result = String.format("%5d %12d %7.3f %12.1f %12.1f",
+                                      level, pack.length(),
+                                      pack.length() / (double) total,
+                                      total / 1e6 / storeSecs,
+                                      total / 1e6 / readSecs);
+        pack.delete();
+        index.delete();
+        dir.delete();
+        return result;
+    }
+
+    /** Return the blobs of a corpus of COPIES copies, each repeated
+     *  REPEATS times, of each file in DIR. */
+    private static List<byte[]> corpus(File dir, int copies, int repeats) {
+        List<byte[]> result = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            byte[] contents = Utils.readContents(new File(dir, name));
+            for (int k = 0; k < copies; k += 1) {
+                ByteArrayOutputStream blob = new ByteArrayOutputStream();
+                blob.writeBytes(String.format("copy %d of %s%n", k, name)
+                                .getBytes(StandardCharsets.UTF_8));
+                for (int r = 0; r < repeats; r += 1) {
+                    blob.writeBytes(contents);
+                }
+                result.add(blob.toByteArray());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,474 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/** A harness that times gitlet's persistence primitives and its
+ *  commands on synthetic repositories of given shapes, and reports the
+ *  results in a machine-readable form, so that runs on different
+ *  versions can be compared.  Usage, from the proj2 directory:
+ *
+ *      javac -d out gitlet/*.java benchmarks/gitlet/*.java
+ *      mkdir scratch && cd scratch
+ *      java -cp ../out gitlet.OperationBenchmark [PARAM=VALUE,...]...
+ *
+ *  Since Repository.CWD is fixed when the JVM starts, the synthetic
+ *  repositories are built in the current directory, which must be empty
+ *  at the start and is emptied again after each shape.  The parameters
+ *  are
+ *
+ *      files     number of files in the working tree (default 100)
+ *      size      bytes per file (default 4096)
+ *      depth     number of commits on main (default 20)
+ *      branches  number of branches besides main (default 2)
+ *      warmup    untimed iterations per benchmark (default 3)
+ *      iterations  timed iterations per benchmark (default 10)
+ *      format    csv (the default) or json
+ *      only      names of the benchmarks to run (default all)
+ *
+ *  The four shape parameters may each be given a comma-separated list of
+ *  values, and every combination is measured.  The benchmarks are
+ *
+ *      sha1        Utils.sha1 of one file's contents
+ *      serialize   Utils.serialize of a map from FILES names to ids
+ *      writeObject Utils.writeObject of the same map
+ *      readObject  Utils.readObject of the same map
+ *      add         add of one modified file
+ *      commit      commit of one staged modification
+ *      checkout    checkout of main or of a branch that changes one
+ *                  file in BRANCHES + 1 (skipped if BRANCHES is 0)
+ *      merge       merge into main, itself changed, of a new branch
+ *                  with one change
+ *
+ *  Each timed iteration of the first four repeats the operation for at
+ *  least MIN_ITERATION_NS; each iteration of the others runs one command
+ *  on a fresh Repository, as a separate gitlet process would, with its
+ *  preparation (such as modifying the file to add) untimed.  For each
+ *  benchmark and shape, prints the mean, standard deviation, minimum,
+ *  and maximum time per operation in nanoseconds, as CSV with a header
+ *  line or as a JSON array of objects with the same keys.  Progress is
+ *  reported on the standard error.
+ */
+public class OperationBenchmark {
+
+    /** Shortest duration of one timed iteration of a primitive. */
+    private static final long MIN_ITERATION_NS = 10_000_000;
+    /** Seed of the generator of file contents. */
+    private static final long SEED = 61;
+    /** Name of the file written and read by writeObject and readObject. */
+    private static final String OBJECT_FILE = "bench.obj";
+    /** The branch created by init. */
+    private static final String MAIN = Repository.DEFAULT_BRANCH;
+    /** The columns of the results, in order. */
+    private static final String COLUMNS =
+        "benchmark,files,size,depth,branches,iterations,"
+        + "mean_ns,stddev_ns,min_ns,max_ns";
+
+    /** Values of the parameters. */
+    private final Map<String, String> params = new LinkedHashMap<>();
+    /** Lines of results printed so far. */
+    private int printed;
+    /** Generator of file contents. */
+    private Random random;
+    /** The standard output, while the commands' output is discarded. */
+    private PrintStream out;
+
+    /** Run the benchmarks with the parameters ARGS described above. */
+    public static void main(String... args) throws IOException {
+        String[] existing = Repository.CWD.list();
+        if (existing == null || existing.length > 0) {
+            System.err.println("Run OperationBenchmark in an empty "
+                               + "directory.");
+            System.exit(1);
+        }
+        new OperationBenchmark(args).run();
+    }
+
+    /** A benchmark run with parameters ARGS. */
+    private OperationBenchmark(String... args) {
+        params.put("files", "100");
+        params.put("size", "4096");
+        params.put("depth", "20");
+        params.put("branches", "2");
+        params.put("warmup", "3");
+        params.put("iterations", "10");
+        params.put("format", "csv");
+        params.put("only", "sha1,serialize,writeObject,readObject,add,"
+                   + "commit,checkout,merge");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !params.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("unknown parameter: "
+                                                   + arg);
+            }
+            params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        if (!params.get("format").matches("csv|json")) {
+            throw new IllegalArgumentException("unknown format: "
+                                               + params.get("format"));
+        }
+    }
+
+    /** Measure every combination of the shape parameters. */
+    private void run() throws IOException {
+        out = System.out;
+        if (json()) {
+            out.println("[");
+        } else {
+            out.println(COLUMNS);
+        }
+        for (int files : values("files")) {
+            for (int size : values("size")) {
+                for (int depth : values("depth")) {
+                    for (int branches : values("branches")) {
+                        measureShape(files, size, depth, branches);
+                    }
+                }
+            }
+        }
+        if (json()) {
+            out.println(printed > 0 ? "\n]" : "]");
+        }
+        out.flush();
+    }
+
+    /** Build a repository of FILES files of SIZE bytes, with DEPTH commits
+     *  on main and BRANCHES other branches, and run the benchmarks on
+     *  it. */
+    private void measureShape(int files, int size, int depth, int branches)
+        throws IOException {
+        System.err.printf("shape: files=%d size=%d depth=%d branches=%d%n",
+                          files, size, depth, branches);
+        random = new Random(SEED);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            build(files, size, depth, branches);
+            for (Benchmark bench
+                     : benchmarks(files, size, branches)) {
+                if (!selected(bench.name)) {
+                    continue;
+                }
+                System.err.printf("  %s%n", bench.name);
+                for (int i = 0; i < integer("warmup"); i += 1) {
+                    bench.measure(i);
+                }
+                int n = integer("iterations");
+                double[] times = new double[n];
+                for (int i = 0; i < n; i += 1) {
+                    times[i] = bench.measure(integer("warmup") + i);
+                }
+                bench.finish();
+                report(bench.name, new int[] {files, size, depth, branches},
+                       times);
+            }
+        } finally {
+            System.setOut(out);
+            clean();
+        }
+    }
+
+    /** Create, in the empty current directory, a repository of FILES files
+     *  of SIZE bytes with DEPTH commits on main and BRANCHES other
+     *  branches, each of which changes the files whose numbers are
+     *  congruent to its own modulo BRANCHES + 1.  Leave main checked
+     *  out, with nothing staged. */
+    private void build(int files, int size, int depth, int branches) {
+        command("init");
+        Repository repo = new Repository();
+        for (int k = 0; k < files; k += 1) {
+            modify(k, size);
+            Main.run(repo, "add", fileName(k));
+        }
+        Main.run(repo, "commit", "files");
+        for (int d = 2; d <= depth; d += 1) {
+            int k = d % files;
+            modify(k, size);
+            Main.run(repo, "add", fileName(k));
+            Main.run(repo, "commit", "history " + d);
+        }
+        for (int b = 1; b <= branches; b += 1) {
+            Main.run(repo, "branch", "b" + b);
+            Main.run(repo, "checkout", "b" + b);
+            for (int k = b; k < files; k += branches + 1) {
+                modify(k, size);
+                Main.run(repo, "add", fileName(k));
+            }
+            Main.run(repo, "commit", "branch " + b);
+            Main.run(repo, "checkout", MAIN);
+        }
+    }
+
+    /** Return the benchmarks for a repository of FILES files of SIZE
+     *  bytes and BRANCHES branches other than main. */
+    private List<Benchmark> benchmarks(int files, int size, int branches) {
+        byte[] contents = new byte[size];
+        random.nextBytes(contents);
+        TreeMap<String, String> map = new TreeMap<>();
+        for (int k = 0; k < files; k += 1) {
+            map.put(fileName(k), Utils.sha1(fileName(k)));
+        }
+        File objectFile = new File(OBJECT_FILE);
+        Utils.writeObject(objectFile, map);
+
+        List<Benchmark> result = new ArrayList<>();
+        result.add(new Primitive("sha1", () -> Utils.sha1(contents)));
+        result.add(new Primitive("serialize", () -> Utils.serialize(map)));
+        result.add(new Primitive("writeObject",
+                                 () -> Utils.writeObject(objectFile, map)));
+        result.add(new Primitive("readObject",
+                                 () -> Utils.readObject(objectFile,
+                                                        TreeMap.class)) {
+                @Override
+                void finish() {
+                    objectFile.delete();
+                }
+            });
+        result.add(new Command("add") {
+                @Override
+                void setUp(int i) {
+                    modify(i % files, size);
+                }
+
+                @Override
+                void run(int i) {
+                    command("add", fileName(i % files));
+                }
+
+                @Override
+                void finish() {
+                    command("commit", "added");
+                }
+            });
+        result.add(new Command("commit") {
+                @Override
+                void setUp(int i) {
+                    modify(i % files, size);
+                    command("add", fileName(i % files));
+                }
+
+                @Override
+                void run(int i) {
+                    command("commit", "commit " + i);
+                }
+            });
+        if (branches > 0) {
+            result.add(new Command("checkout") {
+                    /** The branch checked out last. */
+                    private String current = MAIN;
+
+                    @Override
+                    void run(int i) {
+                        current = current.equals(MAIN) ? "b1" : MAIN;
+                        command("checkout", current);
+                    }
+
+                    @Override
+                    void finish() {
+                        if (!current.equals(MAIN)) {
+                            command("checkout", MAIN);
+                        }
+                    }
+                });
+        }
+        if (files > 1) {
+            result.add(new Command("merge") {
+                    @Override
+                    void setUp(int i) {
+                        command("branch", "m" + i);
+                        command("checkout", "m" + i);
+                        modify(2 * i % files, size);
+                        command("add", fileName(2 * i % files));
+                        command("commit", "other " + i);
+                        command("checkout", MAIN);
+                        modify((2 * i + 1) % files, size);
+                        command("add", fileName((2 * i + 1) % files));
+                        command("commit", "main " + i);
+                    }
+
+                    @Override
+                    void run(int i) {
+                        command("merge", "m" + i);
+                    }
+                });
+        }
+        return result;
+    }
+
+    /** Print the results TIMES, in ns per operation, of the benchmark
+     *  NAME on a repository of shape SHAPE (files, size, depth,
+     *  branches). */
+    private void report(String name, int[] shape, double[] times) {
+        double sum = 0, min = Double.MAX_VALUE, max = 0;
+        for (double t : times) {
+            sum += t;
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        double mean = sum / times.length;
+        double squares = 0;
+        for (double t : times) {
+            squares += (t - mean) * (t - mean);
+        }
+        double stddev =
+            times.length > 1 ? Math.sqrt(squares / (times.length - 1)) : 0;
+        Object[] values = {name, shape[0], shape[1], shape[2], shape[3],
+                           times.length, Math.round(mean),
+                           Math.round(stddev), Math.round(min),
+                           Math.round(max)};
+        String[] keys = COLUMNS.split(",");
+        StringBuilder line = new StringBuilder();
+        if (json()) {
+            line.append(printed > 0 ? ",\n  {" : "  {");
+            for (int c = 0; c < keys.length; c += 1) {
+                line.append(c > 0 ? ", " : "").append('"').append(keys[c])
+                    .append("\": ");
+                line.append(c == 0 ? "\"" + values[c] + "\"" : values[c]);
+            }
+            line.append('}');
+            out.print(line);
+        } else {
+            for (int c = 0; c < keys.length; c += 1) {
+                line.append(c > 0 ? "," : "").append(values[c]);
+            }
+            out.println(line);
+        }
+        printed += 1;
+    }
+
+    /** Run the gitlet command ARGS as a separate process would.  Throws
+     *  IllegalStateException if it fails. */
+    private static void command(String... args) {
+        try {
+            Main.run(new Repository(), args);
+        } catch (GitletException excp) {
+            throw new IllegalStateException(String.join(" ", args) + ": "
+                                            + excp.getMessage());
+        }
+    }
+
+    /** Replace the contents of file number K with SIZE new random
+     *  bytes. */
+    private void modify(int k, int size) {
+        byte[] contents = new byte[size];
+        random.nextBytes(contents);
+        Utils.writeContents(new File(fileName(k)), contents);
+    }
+
+    /** Return the name of file number K. */
+    private static String fileName(int k) {
+        return String.format("f%06d", k);
+    }
+
+    /** Delete everything in the current directory. */
+    private static void clean() throws IOException {
+        try (Stream<Path> paths = Files.walk(Repository.CWD.toPath())) {
+            for (Path path : paths.sorted(Comparator.reverseOrder())
+                     .toArray(Path[]::new)) {
+                if (!path.equals(Repository.CWD.toPath())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /** Return true iff the results are to be printed as JSON. */
+    private boolean json() {
+        return params.get("format").equals("json");
+    }
+
+    /** Return true iff the benchmark NAME is to be run. */
+    private boolean selected(String name) {
+        return List.of(params.get("only").split(",")).contains(name);
+    }
+
+    /** Return the value of the integer parameter NAME. */
+    private int integer(String name) {
+        return Integer.parseInt(params.get(name));
+    }
+
+    /** Return the values of the list-valued parameter NAME. */
+    private int[] values(String name) {
+        return Stream.of(params.get(name).split(","))
+            .mapToInt(Integer::parseInt).toArray();
+    }
+
+    /** One benchmark. */
+    private abstract static class Benchmark {
+        /** The name under which my results are reported. */
+        final String name;
+
+        /** A benchmark named NAME. */
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        /** Run iteration I, and return its time per operation in ns. */
+        abstract double measure(int i);
+
+        /** Clean up after the last iteration. */
+        void finish() {
+        }
+    }
+
+    /** A benchmark of an operation too fast to time singly, which is
+     *  repeated for at least MIN_ITERATION_NS per iteration. */
+    private static class Primitive extends Benchmark {
+        /** The operation measured. */
+        private final Runnable op;
+
+        /** A benchmark named NAME of OP. */
+        Primitive(String name, Runnable op) {
+            super(name);
+            this.op = op;
+        }
+
+        @Override
+        double measure(int i) {
+            long start = System.nanoTime(), elapsed;
+            int count = 0;
+            do {
+                op.run();
+                count += 1;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < MIN_ITERATION_NS);
+            return elapsed / (double) count;
+        }
+    }
+
+    /** A benchmark of one gitlet command per iteration, with untimed
+     *  preparation. */
+    private abstract static class Command extends Benchmark {
+
+        /** A benchmark named NAME. */
+        Command(String name) {
+            super(name);
+        }
+
+        @Override
+        double measure(int i) {
+            setUp(i);
+            long start = System.nanoTime();
+            run(i);
+            return System.nanoTime() - start;
+        }
+
+        /** Prepare for iteration I. */
+        void setUp(int i) {
+        }
+
+        /** Run the command of iteration I. */
+        abstract void run(int i);
+    }
+}
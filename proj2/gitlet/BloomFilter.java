@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** Bloom filters of the paths that commits change, kept in the commit
+ *  graph so that path-limited history can pass over the commits that did
+ *  not touch a path without reading them.  As in Git's changed-path
+ *  filters, a filter is an array of a multiple of 64 bits, about
+ *  BITS_PER_PATH bits for each path, in which each path sets HASHES bits
+ *  chosen by double hashing from two 32-bit MurmurHash3 hashes of its
+ *  UTF-8 encoding with different seeds.
+ *
+ *  A filter never reports a path that it contains as absent, and reports
+ *  other paths as present with probability about 1%.  The empty filter
+ *  (of no bytes) contains nothing.  A commit that changes more than
+ *  MAX_PATHS paths instead gets a filter of all ones, which contains
+ *  everything.
+ */
+class BloomFilter {
+
+    /** Bits in a filter per path it holds. */
+    private static final int BITS_PER_PATH = 10;
+    /** Number of bits set by each path. */
+    private static final int HASHES = 7;
+    /** The largest number of paths for which a real filter is kept. */
+    static final int MAX_PATHS = 512;
+    /** Seeds of the two hashes of a path. */
+    private static final int SEED0 = 0x293ae76f, SEED1 = 0x7e646e2c;
+
+    /** Return a filter containing PATHS, or the filter containing
+     *  everything if PATHS is null or has more than MAX_PATHS elements. */
+    static byte[] of(Collection<String> paths) {
+        if (paths == null || paths.size() > MAX_PATHS) {
+            return new byte[] { (byte) 0xff };
+        }
+        if (paths.isEmpty()) {
+            return new byte[0];
+        }
+        byte[] result =
+            new byte[(paths.size() * BITS_PER_PATH + 63) / 64 * 8];
+        long bits = 8L * result.length;
+        for (String path : paths) {
+            long key = key(path);
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = bit(key, i, bits);
+                result[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return result;
+    }
+
+    /** Return the hashes of PATH, which select its bits in any filter. */
+    static long key(String path) {
+        byte[] data = path.getBytes(StandardCharsets.UTF_8);
+        return ((long) murmur3(data, SEED0) << 32)
+            | (murmur3(data, SEED1) & 0xffffffffL);
+    }
+
+    /** Return true iff the filter held in the LENGTH bytes of DATA at
+     *  OFFSET may contain the path whose key is KEY. */
+    static boolean mayContain(ByteBuffer data, int offset, int length,
+                              long key) {
+        if (length == 0) {
+            return false;
+        }
+        long bits = 8L * length;
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = bit(key, i, bits);
+            if ((data.get(offset + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the Ith bit set by the path whose key is KEY in a filter of
+     *  BITS bits. */
+    private static int bit(long key, int i, long bits) {
+        long h0 = key >>> 32, h1 = key & 0xffffffffL;
+        return (int) (((h0 + i * h1) & 0xffffffffL) % bits);
+    }
+
+    /** Return the 32-bit MurmurHash3 of DATA with seed SEED. */
+    private static int murmur3(byte[] data, int seed) {
+        final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+        int h = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i += 1) {
+            int k = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8
+                | (data[4 * i + 2] & 0xff) << 16
+                | (data[4 * i + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0, tail = data.length & 3;
+        if (tail >= 3) {
+            k ^= (data[4 * blocks + 2] & 0xff) << 16;
+        }
+        if (tail >= 2) {
+            k ^= (data[4 * blocks + 1] & 0xff) << 8;
+        }
+        if (tail >= 1) {
+            k ^= data[4 * blocks] & 0xff;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
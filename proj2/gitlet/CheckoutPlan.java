@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import static gitlet.Utils.*;
+
+/** A set of changes to the working directory, computed in full before any
+ *  of it is carried out: files to be written with the contents of given
+ *  blobs, and files to be deleted.
+ *
+ *  A plan is carried out in two phases.  First, the contents of every file
+ *  to be written are written to a temporary file in a scratch directory.
+ *  If any of these writes fails, the temporary files are discarded and the
+ *  working directory is left exactly as it was.  Otherwise, every existing
+ *  file to be deleted and then every one to be replaced is moved aside
+ *  into the scratch directory, and the temporary files are renamed into
+ *  place.  Directories left empty by the deletions are removed before
+ *  the renames, so that a file may take the place of a directory of
+ *  deleted files, and a directory that of a deleted file.  If any of
+ *  those renames fails (say, because a directory is in the way), the
+ *  files renamed into place are removed and the files moved aside are
+ *  restored, so that again the working directory is left as it was.
+ *  Large plans use a bounded pool of threads for both phases, so that the
+ *  latency of many small file operations overlaps.
+ */
+class CheckoutPlan {
+
+    /** The largest number of threads used to carry out a plan. */
+    private static final int MAX_THREADS = 8;
+    /** Plans with fewer operations than this are carried out by the calling
+     *  thread alone. */
+    private static final int PARALLEL_THRESHOLD = 16;
+    /** Prefix of the names of the files moved aside into the scratch
+     *  directory, which distinguishes them from temporary files. */
+    static final String BACKUP_PREFIX = "old";
+
+    /** The working directory. */
+    private final File dir;
+    /** Scratch directory for temporary files, on the same file system as
+     *  dir. */
+    private final File scratch;
+    /** Source of blob contents. */
+    private final PackStore objects;
+    /** Maps names of files to be written to the ids of their blobs. */
+    private final TreeMap<String, String> writes = new TreeMap<>();
+    /** Names of files to be deleted. */
+    private final TreeSet<String> deletes = new TreeSet<>();
+
+    /** An empty plan for working directory DIR, using SCRATCH for
+     *  temporary files and OBJECTS for blob contents. */
+    CheckoutPlan(File dir, File scratch, PackStore objects) {
+        this.dir = dir;
+        this.scratch = scratch;
+        this.objects = objects;
+    }
+
+    /** Arrange for working file NAME to get the contents of the blob with
+     *  id BLOBID. */
+    void write(String name, String blobId) {
+        writes.put(name, blobId);
+    }
+
+    /** Arrange for working file NAME to be deleted. */
+    void delete(String name) {
+        deletes.add(name);
+    }
+
+    /** Return the files to be written, mapped to their blob ids. */
+    Map<String, String> writes() {
+        return writes;
+    }
+
+    /** Carry out this plan.  Throws a GitletException, leaving the working
+     *  directory unchanged, if any file cannot be written. */
+    void execute() {
+        if (writes.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        if (!join(dir, ".gitlet").isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working "
+                                               + "directory");
+        }
+        List<String> names = new ArrayList<>(writes.keySet());
+        List<String> targets = new ArrayList<>(names);
+        for (String name : deletes) {
+            if (!writes.containsKey(name)) {
+                targets.add(name);
+            }
+        }
+        boolean[] movedAside = new boolean[targets.size()];
+        boolean[] installed = new boolean[names.size()];
+        Set<File> madeDirs = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = targets.size() < PARALLEL_THRESHOLD ? null
+            : Executors.newFixedThreadPool(Math.min(MAX_THREADS,
+                                                    targets.size()));
+        boolean restored = true;
+        scratch.mkdir();
+        try {
+            try {
+                runAll(pool, names.size(), i ->
+                    objects.copy(writes.get(names.get(i)), temporary(i)));
+            } catch (IllegalArgumentException excp) {
+                throw error("Could not update the working directory "
+                            + "(unchanged): %s", excp.getMessage());
+            }
+            int numWrites = names.size();
+            try {
+                runAll(pool, targets.size() - numWrites, i ->
+                    movedAside[numWrites + i] =
+                        moveAside(targets.get(numWrites + i), numWrites + i,
+                                  false));
+                for (int k = numWrites; k < targets.size(); k += 1) {
+                    if (movedAside[k]) {
+                        pruneParents(join(dir, targets.get(k)));
+                    }
+                }
+                runAll(pool, numWrites, k ->
+                    movedAside[k] = moveAside(targets.get(k), k, true));
+                runAll(pool, numWrites, i -> {
+                    install(names.get(i), i, madeDirs);
+                    installed[i] = true;
+                });
+            } catch (IllegalArgumentException excp) {
+                restored = rollBack(names, targets, installed, movedAside,
+                                    madeDirs);
+                if (!restored) {
+                    throw error("Could not update the working directory, "
+                                + "nor restore it; its replaced files are "
+                                + "in %s: %s", scratch, excp.getMessage());
+                }
+                throw error("Could not update the working directory "
+                            + "(unchanged): %s", excp.getMessage());
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            for (int i = 0; i < names.size(); i += 1) {
+                temporary(i).delete();
+            }
+            if (restored) {
+                for (int k = 0; k < targets.size(); k += 1) {
+                    backup(k).delete();
+                }
+                scratch.delete();
+            }
+        }
+    }
+
+    /** If working file NAME, the Kth target of this plan, exists and is
+     *  not a directory, move it to backup(K) and return true; otherwise
+     *  return false.  If REPLACED, NAME is to be written, and so must not
+     *  be a directory or lie under a file. */
+    private boolean moveAside(String name, int k, boolean replaced) {
+        File target = join(dir, name);
+        if (replaced) {
+            for (File f = target; !f.equals(dir); f = f.getParentFile()) {
+                if (f == target ? f.isDirectory()
+                    : f.exists() && !f.isDirectory()) {
+                    throw new IllegalArgumentException(
+                        String.format("%s is in the way of %s",
+                                      dir.toPath().relativize(f.toPath()),
+                                      name));
+                }
+            }
+        }
+        if (target.isDirectory()) {
+            return false;
+        }
+        try {
+            Files.move(target.toPath(), backup(k).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Rename temporary(I) to working file NAME, creating its missing
+     *  parent directories and adding them to MADEDIRS. */
+    private void install(String name, int i, Set<File> madeDirs) {
+        File target = join(dir, name);
+        ArrayList<File> missing = new ArrayList<>();
+        for (File parent = target.getParentFile(); !parent.exists();
+             parent = parent.getParentFile()) {
+            missing.add(parent);
+        }
+        target.getParentFile().mkdirs();
+        missing.forEach(parent -> {
+            if (parent.isDirectory()) {
+                madeDirs.add(parent);
+            }
+        });
+        try {
+            Files.move(temporary(i).toPath(), target.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Undo a partly carried out plan: remove the files among NAMES that
+     *  have been INSTALLED and the directories in MADEDIRS, and move back
+     *  the files among TARGETS that have been MOVEDASIDE, remaking their
+     *  directories.  Return true iff every file moved aside was
+     *  restored. */
+    private boolean rollBack(List<String> names, List<String> targets,
+                             boolean[] installed, boolean[] movedAside,
+                             Set<File> madeDirs) {
+        for (int i = 0; i < names.size(); i += 1) {
+            if (installed[i]) {
+                join(dir, names.get(i)).delete();
+            }
+        }
+        List<File> dirs = new ArrayList<>(madeDirs);
+        dirs.sort((x, y) -> y.getPath().length() - x.getPath().length());
+        dirs.forEach(File::delete);
+        boolean result = true;
+        for (int k = 0; k < targets.size(); k += 1) {
+            if (movedAside[k]) {
+                File target = join(dir, targets.get(k));
+                target.getParentFile().mkdirs();
+                try {
+                    Files.move(backup(k).toPath(), target.toPath(),
+                               StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException excp) {
+                    result = false;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Delete each directory between FILE, which has been deleted, and
+     *  the working directory that is left empty. */
+    private void pruneParents(File file) {
+        File parent = file.getParentFile();
+        while (!parent.equals(dir) && parent.delete()) {
+            parent = parent.getParentFile();
+        }
+    }
+
+    /** Return the temporary file for the Kth file to be written. */
+    private File temporary(int k) {
+        return join(scratch, Integer.toString(k));
+    }
+
+    /** Return the file to which the Kth target of this plan is moved
+     *  aside. */
+    private File backup(int k) {
+        return join(scratch, BACKUP_PREFIX + k);
+    }
+
+    /** Apply TASK to 0 .. N-1, using POOL if it is non-null, and wait for
+     *  all applications to finish.  Rethrows the exception thrown by the
+     *  first failing application, if any. */
+    private static void runAll(ExecutorService pool, int n, IntConsumer task) {
+        if (pool == null) {
+            for (int i = 0; i < n; i += 1) {
+                task.accept(i);
+            }
+            return;
+        }
+        List<Callable<Void>> calls = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            int k = i;
+            calls.add(() -> {
+                task.accept(k);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : pool.invokeAll(calls)) {
+                result.get();
+            }
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
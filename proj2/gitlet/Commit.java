@@ -1,26 +1,125 @@
 package gitlet;
 
-// TODO: any imports you need here
-
-import java.util.Date; // TODO: You'll likely use this in this class
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 /** Represents a gitlet commit object.
- *  TODO: It's a good idea to give a description here of what else this Class
- *  does at a high level.
- *
- *  @author TODO
+ *  A commit is an immutable snapshot: a log message, a timestamp, the ids
+ *  of its parent commits (none for the initial commit, two for a merge),
+ *  and the id of the root Tree of the files it tracks.  A commit is
+ *  identified by the SHA-1 hash of its encoding (see encode), and is stored
+ *  in the repository's object store under that id.
  */
-public class Commit {
-    /**
-     * TODO: add instance variables here.
+public class Commit implements Dumpable {
+
+    /** Kind tag of an encoded commit. */
+    static final byte TAG = 'C';
+    /** Current version of the commit encoding. */
+    static final byte VERSION = 2;
+    /** Format of the dates in log entries, in the US locale. */
+    static final String LOG_DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+
+    /** The message of this Commit. */
+    private final String message;
+    /** The time at which this Commit was made. */
+    private final Date timestamp;
+    /** The ids of the parents of this Commit, first parent first. */
+    private final ArrayList<String> parents;
+    /** The id of the root tree of the files tracked by this Commit. */
+    private final String tree;
+
+    /** A commit with the given MESSAGE and TIMESTAMP, whose parents are
+     *  PARENTS and which tracks the files in the tree with id TREE. */
+    Commit(String message, Date timestamp, List<String> parents,
+           String tree) {
+        this.message = message;
+        this.timestamp = timestamp;
+        this.parents = new ArrayList<>(parents);
+        this.tree = tree;
+    }
+
+    /** Return my log message. */
+    String message() {
+        return message;
+    }
+
+    /** Return my timestamp. */
+    Date timestamp() {
+        return timestamp;
+    }
+
+    /** Return the ids of my parents, first parent first. */
+    List<String> parents() {
+        return parents;
+    }
+
+    /** Return the id of my first parent, or null if I am the initial
+     *  commit. */
+    String parent() {
+        return parents.isEmpty() ? null : parents.get(0);
+    }
+
+    /** Return true iff I am a merge commit. */
+    boolean isMerge() {
+        return parents.size() > 1;
+    }
+
+    /** Return the id of the root tree of the files I track. */
+    String tree() {
+        return tree;
+    }
+
+    /** Append my entry in the format of the log command to OUT, given
+     *  that my id is ID, formatting my timestamp with DATES (see
+     *  LOG_DATE_FORMAT). */
+    void appendLogEntry(String id, SimpleDateFormat dates, StringBuilder out) {
+        out.append("===\n");
+        out.append("commit ").append(id).append("\n");
+        if (isMerge()) {
+            out.append("Merge: ").append(parents.get(0), 0, 7).append(' ')
+                .append(parents.get(1), 0, 7).append("\n");
+        }
+        out.append("Date: ").append(dates.format(timestamp)).append("\n");
+        out.append(message).append("\n");
+    }
+
+    /** Return my encoding:
      *
-     * List all instance variables of the Commit class here with a useful
-     * comment above them describing what that variable represents and how that
-     * variable is used. We've provided one example for `message`.
+     *      TAG VERSION
+     *      timestamp (ms since the epoch, varint)
+     *      parent count (varint)  parent ids
+     *      message (string)
+     *      root tree id
      */
+    byte[] encode() {
+        Encoder out = new Encoder(TAG, VERSION);
+        out.writeVarint(timestamp.getTime());
+        out.writeVarint(parents.size());
+        parents.forEach(out::writeId);
+        out.writeString(message);
+        out.writeId(tree);
+        return out.toByteArray();
+    }
 
-    /** The message of this Commit. */
-    private String message;
+    /** Return the commit whose encoding is DATA. */
+    static Commit decode(byte[] data) {
+        Decoder in = new Decoder(data, TAG, VERSION);
+        Date timestamp = new Date(in.readVarint());
+        int numParents = in.readLength();
+        ArrayList<String> parents = new ArrayList<>(numParents);
+        for (int i = 0; i < numParents; i += 1) {
+            parents.add(in.readId());
+        }
+        String message = in.readString();
+        return new Commit(message, timestamp, parents, in.readId());
+    }
 
-    /* TODO: fill in the rest of this class. */
+    @Override
+    public void dump() {
+        System.out.printf("message: %s%ntimestamp: %s%nparents: %s%n"
+                          + "tree: %s%n",
+                          message, timestamp, parents, tree);
+    }
 }
@@ -0,0 +1,498 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+import static gitlet.Utils.*;
+
+/** A cache of the shape of a repository's history: for every commit, its
+ *  parents and its generation number, which is 1 for the initial commit
+ *  and otherwise one more than the largest generation of its parents.  A
+ *  commit's generation is thus strictly greater than that of any of its
+ *  ancestors, which lets ancestry queries stop as soon as they pass below
+ *  the generation of the commits they are looking for, without reading
+ *  any commit objects.
+ *
+ *  Commits are numbered by their position in the graph.  Since a commit
+ *  is always added after its parents, positions form a topological order
+ *  and never change as commits are added.  The graph file consists of a
+ *  12-byte header (MAGIC, VERSION, commit count N), then N RECORD_BYTES
+ *  records in position order of the form
+ *
+ *      raw id (20 bytes)  first parent (4 bytes)  second parent (4 bytes)
+ *      generation (4 bytes)
+ *
+ *  where parents are given by position, or NONE, then N 4-byte
+ *  positions sorted by the ids of the commits they denote, which are
+ *  binary-searched to find a commit by id, and finally the changed-path
+ *  filters of the commits: N 4-byte offsets, in position order, of the
+ *  end of each commit's filter within the filter data that follows them.
+ *  The filter of a commit is a BloomFilter of the paths whose blobs
+ *  differ between its snapshot and its first parent's (or, for the
+ *  initial commit, of all its paths), so that a walk of history limited
+ *  to one path reads only the commits that may have changed it.
+ *
+ *  Commits that are missing from the graph (for example, those made before
+ *  it existed) are added on demand using functions that read their
+ *  parents and changed paths from the object store.  A graph file of an
+ *  earlier version, which lacks filters, is treated as empty, and so is
+ *  rebuilt in the same way.
+ */
+class CommitGraph {
+
+    /** Magic number at the start of a graph file ("GCGR"). */
+    private static final int MAGIC = 0x47434752;
+    /** Format version of the graph file. */
+    private static final int VERSION = 2;
+    /** Length of the graph file header. */
+    private static final int HEADER_BYTES = 12;
+    /** Length of a raw SHA-1 id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /** Length of one commit record. */
+    private static final int RECORD_BYTES = ID_BYTES + 4 + 4 + 4;
+    /** Parent position denoting no parent. */
+    private static final int NONE = -1;
+
+    /** Flag marking commits reachable from the first commit of a
+     *  merge-base query. */
+    private static final int FROM_FIRST = 1;
+    /** Flag marking commits reachable from the second commit of a
+     *  merge-base query. */
+    private static final int FROM_SECOND = 2;
+    /** Flag marking commits that are ancestors of a common ancestor
+     *  already found. */
+    private static final int STALE = 4;
+
+    /** The graph file. */
+    private final File file;
+    /** Returns the ids of the parents of a commit, given its id. */
+    private final Function<String, List<String>> parentsOf;
+    /** Returns the paths changed by a commit relative to its first parent,
+     *  or null if there are too many to filter, given its id. */
+    private final Function<String, List<String>> changedPathsOf;
+    /** The contents of the graph file, or null if not yet read. */
+    private ByteBuffer stored;
+    /** Number of commits in stored. */
+    private int storedCount;
+    /** Records of commits added since the graph file was read, in
+     *  position order, each in the format of a stored record. */
+    private final ArrayList<ByteBuffer> added = new ArrayList<>();
+    /** Positions of commits in added, by id. */
+    private final HashMap<String, Integer> addedPositions = new HashMap<>();
+    /** Changed-path filters of the commits in added, in the same order. */
+    private final ArrayList<byte[]> addedFilters = new ArrayList<>();
+
+    /** A graph kept in FILE, which need not exist yet, that uses PARENTSOF
+     *  and CHANGEDPATHSOF to learn the parents and changed paths (as for
+     *  BloomFilter.of) of commits added to it. */
+    CommitGraph(File file, Function<String, List<String>> parentsOf,
+                Function<String, List<String>> changedPathsOf) {
+        this.file = file;
+        this.parentsOf = parentsOf;
+        this.changedPathsOf = changedPathsOf;
+    }
+
+    /** Add the commit with id ID and parents PARENTS, unless it is already
+     *  present. */
+    void add(String id, List<String> parents) {
+        if (find(id) < 0) {
+            for (String parent : parents) {
+                position(parent);
+            }
+            append(id, parents);
+        }
+    }
+
+    /** Return true iff the commit with id ANCESTOR is the commit with id
+     *  DESCENDANT or one of its ancestors. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = position(ancestor), start = position(descendant);
+        int limit = generation(target);
+        boolean[] seen = new boolean[count()];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(start);
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (k == target) {
+                return true;
+            }
+            if (seen[k] || generation(k) <= limit) {
+                continue;
+            }
+            seen[k] = true;
+            for (int p : parents(k)) {
+                work.push(p);
+            }
+        }
+        return false;
+    }
+
+    /** Return the ids of the commits on the chain of first parents from
+     *  the commit with id HEAD, newest first, that may have changed PATH
+     *  relative to their first parents, as their changed-path filters
+     *  tell.  Every other commit on the chain certainly did not change
+     *  PATH. */
+    List<String> mayHaveChanged(String head, String path) {
+        long key = BloomFilter.key(path);
+        ArrayList<String> result = new ArrayList<>();
+        for (int k = position(head); k != NONE; k = firstParent(k)) {
+            ByteBuffer buf = filters(k);
+            int start = filterStart(k);
+            if (BloomFilter.mayContain(buf, start, filterEnd(k) - start,
+                                       key)) {
+                result.add(id(k));
+            }
+        }
+        return result;
+    }
+
+    /** Return the id of a best common ancestor of the commits with ids
+     *  FIRST and SECOND: a common ancestor of which no other common
+     *  ancestor is a descendant.  When there are several, returns the one
+     *  with the largest generation.
+     *
+     *  Commits are visited in order of decreasing generation, so that
+     *  every commit is visited after all of its descendants that are
+     *  visited, by which time it has inherited the marks of all of them.
+     *  The walk stops once every commit still waiting to be visited is an
+     *  ancestor of a common ancestor already found. */
+    String mergeBase(String first, String second) {
+        int a = position(first), b = position(second);
+        int[] flags = new int[count()];
+        PriorityQueue<Integer> queue =
+            new PriorityQueue<>((x, y) -> generation(x) != generation(y)
+                                ? Integer.compare(generation(y), generation(x))
+                                : Integer.compare(y, x));
+        flags[a] |= FROM_FIRST;
+        flags[b] |= FROM_SECOND;
+        queue.add(a);
+        if (b != a) {
+            queue.add(b);
+        }
+        /* Number of queued commits not marked STALE.  A commit is queued
+         * when it is first marked, and since parents have lower
+         * generations than their children, it is not removed before all
+         * of its marks have arrived. */
+        int live = queue.size();
+        int result = NONE;
+        while (live > 0) {
+            int k = queue.remove();
+            int f = flags[k];
+            if ((f & STALE) == 0) {
+                live -= 1;
+            }
+            if ((f & (FROM_FIRST | FROM_SECOND)) == (FROM_FIRST | FROM_SECOND)
+                && (f & STALE) == 0) {
+                if (result == NONE) {
+                    result = k;
+                }
+                f |= STALE;
+            }
+            for (int p : parents(k)) {
+                if ((flags[p] & f) != f) {
+                    boolean queued = flags[p] != 0;
+                    boolean wasLive = queued && (flags[p] & STALE) == 0;
+                    flags[p] |= f;
+                    if (!queued) {
+                        queue.add(p);
+                    }
+                    boolean isLive = (flags[p] & STALE) == 0;
+                    live += (isLive ? 1 : 0) - (wasLive ? 1 : 0);
+                }
+            }
+        }
+        if (result == NONE) {
+            throw error("Internal error: no common ancestor.");
+        }
+        return id(result);
+    }
+
+    /** Remove all commits from the graph, so that flush will write a
+     *  graph of only those added afterwards. */
+    void clear() {
+        stored = ByteBuffer.allocate(HEADER_BYTES);
+        storedCount = 0;
+        added.clear();
+        addedPositions.clear();
+        addedFilters.clear();
+    }
+
+    /** Arrange for TXN to replace the graph file, if any commits have been
+     *  added. */
+    void flush(Transaction txn) {
+        if (added.isEmpty()) {
+            return;
+        }
+        ByteBuffer old = stored();
+        int total = count();
+        int oldData = storedFilterEnd(storedCount - 1), newData = 0;
+        for (byte[] filter : addedFilters) {
+            newData += filter.length;
+        }
+        ByteBuffer result =
+            ByteBuffer.allocate(HEADER_BYTES + total * (RECORD_BYTES + 8)
+                                + oldData + newData);
+        result.putInt(MAGIC).putInt(VERSION).putInt(total);
+        result.put(old.slice(HEADER_BYTES, storedCount * RECORD_BYTES));
+        for (ByteBuffer rec : added) {
+            result.put(rec.duplicate().rewind());
+        }
+        Integer[] newPositions = addedPositions.values()
+            .toArray(new Integer[0]);
+        Arrays.sort(newPositions, (x, y) -> compareIds(x, y));
+        int lookup = HEADER_BYTES + storedCount * RECORD_BYTES;
+        int j = 0;
+        for (int i = 0; i < storedCount; i += 1) {
+            int k = old.getInt(lookup + 4 * i);
+            while (j < newPositions.length
+                   && compareIds(newPositions[j], k) < 0) {
+                result.putInt(newPositions[j]);
+                j += 1;
+            }
+            result.putInt(k);
+        }
+        for (; j < newPositions.length; j += 1) {
+            result.putInt(newPositions[j]);
+        }
+        result.put(old.slice(filterEndsStart(), storedCount * 4));
+        int end = oldData;
+        for (byte[] filter : addedFilters) {
+            end += filter.length;
+            result.putInt(end);
+        }
+        result.put(old.slice(filterDataStart(), oldData));
+        addedFilters.forEach(result::put);
+        result.flip();
+        txn.write(file, result);
+        stored = result;
+        storedCount = total;
+        added.clear();
+        addedPositions.clear();
+        addedFilters.clear();
+    }
+
+    /** Return the position of the commit with id ID, adding it and any
+     *  missing ancestors to the graph if needed. */
+    private int position(String id) {
+        int k = find(id);
+        if (k >= 0) {
+            return k;
+        }
+        HashMap<String, List<String>> parentCache = new HashMap<>();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            String top = work.peek();
+            if (find(top) >= 0) {
+                work.pop();
+                continue;
+            }
+            List<String> parents =
+                parentCache.computeIfAbsent(top, parentsOf);
+            boolean ready = true;
+            for (String parent : parents) {
+                if (find(parent) < 0) {
+                    work.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                append(top, parents);
+                work.pop();
+            }
+        }
+        return find(id);
+    }
+
+    /** Append a record for the commit with id ID and parents PARENTS, all
+     *  of which are present. */
+    private void append(String id, List<String> parents) {
+        if (parents.size() > 2) {
+            throw error("Internal error: too many parents.");
+        }
+        int gen = 1;
+        int[] ps = { NONE, NONE };
+        for (int i = 0; i < parents.size(); i += 1) {
+            ps[i] = find(parents.get(i));
+            gen = Math.max(gen, generation(ps[i]) + 1);
+        }
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_BYTES);
+        rec.put(uidToBytes(id)).putInt(ps[0]).putInt(ps[1]).putInt(gen);
+        int k = count();
+        added.add(rec);
+        addedPositions.put(id, k);
+        addedFilters.add(BloomFilter.of(changedPathsOf.apply(id)));
+    }
+
+    /** Return the position of the commit with id ID, or -1 if it is not
+     *  in the graph. */
+    private int find(String id) {
+        Integer k = addedPositions.get(id);
+        if (k != null) {
+            return k;
+        }
+        ByteBuffer buf = stored();
+        byte[] target = uidToBytes(id);
+        int lookup = HEADER_BYTES + storedCount * RECORD_BYTES;
+        int lo = 0, hi = storedCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int pos = buf.getInt(lookup + 4 * mid);
+            int c = compareId(buf, HEADER_BYTES + pos * RECORD_BYTES, target);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the total number of commits in the graph. */
+    private int count() {
+        stored();
+        return storedCount + added.size();
+    }
+
+    /** Return the positions of the parents of commit #K. */
+    private int[] parents(int k) {
+        ByteBuffer rec = record(k);
+        int base = offset(k);
+        int p1 = rec.getInt(base + ID_BYTES),
+            p2 = rec.getInt(base + ID_BYTES + 4);
+        return p1 == NONE ? new int[0]
+            : p2 == NONE ? new int[] { p1 } : new int[] { p1, p2 };
+    }
+
+    /** Return the position of the first parent of commit #K, or NONE if
+     *  it has no parents. */
+    private int firstParent(int k) {
+        return record(k).getInt(offset(k) + ID_BYTES);
+    }
+
+    /** Return the generation of commit #K. */
+    private int generation(int k) {
+        return record(k).getInt(offset(k) + ID_BYTES + 8);
+    }
+
+    /** Return the raw id of commit #K. */
+    private byte[] rawId(int k) {
+        byte[] result = new byte[ID_BYTES];
+        record(k).get(offset(k), result);
+        return result;
+    }
+
+    /** Return the id of commit #K. */
+    private String id(int k) {
+        return bytesToUid(rawId(k), 0, ID_BYTES);
+    }
+
+    /** Return the buffer holding the record of commit #K: either the
+     *  contents of the graph file, or the record's own buffer if it was
+     *  added since the file was read. */
+    private ByteBuffer record(int k) {
+        return k < storedCount ? stored() : added.get(k - storedCount);
+    }
+
+    /** Return the position of the record of commit #K within record(K). */
+    private int offset(int k) {
+        return k < storedCount ? HEADER_BYTES + k * RECORD_BYTES : 0;
+    }
+
+    /** Return the buffer holding the changed-path filter of commit #K:
+     *  either the contents of the graph file, or the filter's own buffer
+     *  if the commit was added since the file was read. */
+    private ByteBuffer filters(int k) {
+        return k < storedCount ? stored()
+            : ByteBuffer.wrap(addedFilters.get(k - storedCount));
+    }
+
+    /** Return the position of the changed-path filter of commit #K within
+     *  filters(K). */
+    private int filterStart(int k) {
+        return k < storedCount ? filterDataStart() + storedFilterEnd(k - 1)
+            : 0;
+    }
+
+    /** Return the position just after the end of the changed-path filter
+     *  of commit #K within filters(K). */
+    private int filterEnd(int k) {
+        return k < storedCount ? filterDataStart() + storedFilterEnd(k)
+            : addedFilters.get(k - storedCount).length;
+    }
+
+    /** Return the offset of the end of the filter of stored commit #K
+     *  within the stored filter data, or 0 if K is -1. */
+    private int storedFilterEnd(int k) {
+        return k < 0 ? 0 : stored().getInt(filterEndsStart() + 4 * k);
+    }
+
+    /** Return the position in the graph file of the ends of the stored
+     *  changed-path filters. */
+    private int filterEndsStart() {
+        return HEADER_BYTES + storedCount * (RECORD_BYTES + 4);
+    }
+
+    /** Return the position in the graph file of the stored changed-path
+     *  filters themselves. */
+    private int filterDataStart() {
+        return filterEndsStart() + storedCount * 4;
+    }
+
+    /** Compare the ids of commits #X and #Y. */
+    private int compareIds(int x, int y) {
+        return compareId(record(x), offset(x), rawId(y));
+    }
+
+    /** Compare the raw id at position POS of BUF with ID as unsigned
+     *  byte strings. */
+    private static int compareId(ByteBuffer buf, int pos, byte[] id) {
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = Integer.compare(buf.get(pos + i) & 0xff, id[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the contents of the graph file, reading it if needed.  An
+     *  absent file is treated as an empty graph. */
+    private ByteBuffer stored() {
+        if (stored == null) {
+            if (!file.isFile()) {
+                stored = ByteBuffer.allocate(HEADER_BYTES);
+                storedCount = 0;
+                return stored;
+            }
+            try (FileChannel in = FileChannel.open(file.toPath(),
+                                                   StandardOpenOption.READ)) {
+                stored = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            if (stored.getInt(0) != MAGIC || stored.getInt(4) > VERSION) {
+                throw error("Corrupted commit graph.");
+            }
+            if (stored.getInt(4) < VERSION) {
+                stored = ByteBuffer.allocate(HEADER_BYTES);
+                storedCount = 0;
+                return stored;
+            }
+            storedCount = stored.getInt(8);
+        }
+        return stored;
+    }
+}
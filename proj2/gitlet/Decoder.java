@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+
+/** Reads the compact binary encoding of a gitlet object produced by an
+ *  Encoder.  Malformed input causes an IllegalArgumentException.
+ */
+class Decoder {
+
+    /** The encoding being read. */
+    private final byte[] data;
+    /** Position of the next unread byte of data. */
+    private int pos;
+
+    /** A decoder for DATA, which must be the encoding of an object of kind
+     *  TAG in format VERSION. */
+    Decoder(byte[] data, byte tag, byte version) {
+        this.data = data;
+        if (data.length < 2 || data[0] != tag) {
+            throw new IllegalArgumentException("wrong kind of object");
+        }
+        if (data[1] != version) {
+            throw new IllegalArgumentException("unknown format version "
+                                               + data[1]);
+        }
+        pos = 2;
+    }
+
+    /** Return the kind tag of the encoded object in DATA, or 0 if DATA is
+     *  empty. */
+    static byte tag(byte[] data) {
+        return data.length == 0 ? 0 : data[0];
+    }
+
+    /** Return true iff all of the input has been read. */
+    boolean atEnd() {
+        return pos == data.length;
+    }
+
+    /** Read and return one byte, as an unsigned value. */
+    int readByte() {
+        check(1);
+        return data[pos++] & 0xff;
+    }
+
+    /** Read and return an unsigned varint. */
+    long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    /** Read and return an unsigned varint that must fit in an int. */
+    int readLength() {
+        long n = readVarint();
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("length too large");
+        }
+        return (int) n;
+    }
+
+    /** Read and return a SHA-1 id, as a hexadecimal numeral. */
+    String readId() {
+        int len = Utils.UID_LENGTH / 2;
+        check(len);
+        String result = Utils.bytesToUid(data, pos, len);
+        pos += len;
+        return result;
+    }
+
+    /** Read and return a string. */
+    String readString() {
+        int len = readLength();
+        check(len);
+        String result = new String(data, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        return result;
+    }
+
+    /** Read LENGTH bytes into DEST[OFFSET .. OFFSET+LENGTH-1]. */
+    void readBytes(byte[] dest, int offset, int length) {
+        check(length);
+        System.arraycopy(data, pos, dest, offset, length);
+        pos += length;
+    }
+
+    /** Throw an IllegalArgumentException unless at least N more bytes
+     *  remain. */
+    private void check(int n) {
+        if (n < 0 || data.length - pos < n) {
+            throw new IllegalArgumentException("truncated object");
+        }
+    }
+}
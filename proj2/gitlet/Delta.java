@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** Delta encoding of one byte sequence (the target) relative to another
+ *  (the base), used to store a blob as its differences from an earlier
+ *  version of the same file.  A delta is a stream of instructions that
+ *  rebuild the target, each either copying a run of bytes from the base
+ *  or inserting bytes carried in the delta itself.  Its encoding is
+ *
+ *      TAG VERSION
+ *      base length (varint)  target length (varint)
+ *      instructions...
+ *
+ *  where each instruction starts with a varint N.  If N is odd, the
+ *  instruction copies N >> 1 bytes from the base starting at the offset
+ *  given by a following varint; if N is even, the N >> 1 bytes that
+ *  follow are inserted.
+ *
+ *  Deltas are computed as in xdelta and Git: the base is indexed by the
+ *  hashes of its aligned BLOCK-byte blocks, and a rolling hash of each
+ *  BLOCK-byte window of the target finds candidate matches, which are
+ *  then extended in both directions.
+ */
+class Delta {
+
+    /** Kind tag of an encoded delta. */
+    static final byte TAG = 'D';
+    /** Current version of the delta encoding. */
+    static final byte VERSION = 1;
+
+    /** Length of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 16777619;
+
+    /** Return a delta that rebuilds TARGET from BASE. */
+    static byte[] compute(byte[] base, byte[] target) {
+        Encoder out = new Encoder(TAG, VERSION);
+        out.writeVarint(base.length).writeVarint(target.length);
+        if (base.length < BLOCK || target.length < BLOCK) {
+            insert(out, target, 0, target.length);
+            return out.toByteArray();
+        }
+
+        int size = Integer.highestOneBit(base.length / BLOCK) * 4;
+        int mask = size - 1;
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        for (int off = 0; off + BLOCK <= base.length; off += BLOCK) {
+            int slot = hash(base, off) & mask;
+            if (table[slot] < 0) {
+                table[slot] = off;
+            }
+        }
+        int highPower = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            highPower *= PRIME;
+        }
+
+        int pending = 0;
+        int pos = 0;
+        int h = hash(target, 0);
+        while (pos + BLOCK <= target.length) {
+            int cand = table[h & mask];
+            if (cand >= 0 && Arrays.equals(base, cand, cand + BLOCK,
+                                           target, pos, pos + BLOCK)) {
+                int start = pos;
+                while (start > pending && cand > 0
+                       && base[cand - 1] == target[start - 1]) {
+                    start -= 1;
+                    cand -= 1;
+                }
+                int len = pos - start + BLOCK;
+                while (cand + len < base.length && start + len < target.length
+                       && base[cand + len] == target[start + len]) {
+                    len += 1;
+                }
+                insert(out, target, pending, start);
+                out.writeVarint(((long) len << 1) | 1).writeVarint(cand);
+                pos = pending = start + len;
+                if (pos + BLOCK <= target.length) {
+                    h = hash(target, pos);
+                }
+                continue;
+            }
+            if (pos + BLOCK < target.length) {
+                h = (h - target[pos] * highPower) * PRIME
+                    + target[pos + BLOCK];
+            }
+            pos += 1;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the target rebuilt by applying DELTA to BASE.  Throws
+     *  IllegalArgumentException if DELTA is malformed or was not computed
+     *  against a base of BASE's length. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        Decoder in = new Decoder(delta, TAG, VERSION);
+        if (in.readVarint() != base.length) {
+            throw new IllegalArgumentException("delta has wrong base");
+        }
+        byte[] result = new byte[in.readLength()];
+        int pos = 0;
+        while (!in.atEnd()) {
+            long n = in.readVarint();
+            long len = n >>> 1;
+            if (len > result.length - pos) {
+                throw new IllegalArgumentException("delta overflows target");
+            }
+            if ((n & 1) == 0) {
+                in.readBytes(result, pos, (int) len);
+            } else {
+                long off = in.readVarint();
+                if (off > base.length - len) {
+                    throw new IllegalArgumentException("delta overflows base");
+                }
+                System.arraycopy(base, (int) off, result, pos, (int) len);
+            }
+            pos += (int) len;
+        }
+        if (pos != result.length) {
+            throw new IllegalArgumentException("truncated delta");
+        }
+        return result;
+    }
+
+    /** Append an instruction to OUT inserting DATA[START .. END), if that
+     *  is not empty. */
+    private static void insert(Encoder out, byte[] data, int start, int end) {
+        if (start < end) {
+            out.writeVarint((long) (end - start) << 1);
+            out.writeBytes(data, start, end - start);
+        }
+    }
+
+    /** Return the hash of DATA[OFF .. OFF+BLOCK), as computed by the
+     *  rolling hash of compute. */
+    private static int hash(byte[] data, int off) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i += 1) {
+            h = h * PRIME + data[off + i];
+        }
+        return h;
+    }
+}
@@ -1,14 +1,17 @@
 package gitlet;
 
 import java.io.File;
+import java.io.Serializable;
 
 /** A debugging class whose main program may be invoked as follows:
  *      java gitlet.DumpObj FILE...
  *  where each FILE is a file produced by Utils.writeObject (or any file
- *  containing a serialized object).  This will simply read FILE,
- *  deserialize it, and call the dump method on the resulting Object.
- *  The object must implement the gitlet.Dumpable interface for this
- *  to work.  For example, you might define your class like this:
+ *  containing a serialized object), a file holding an object in gitlet's
+ *  binary encoding (see Encoder), or the id of a commit in the object store
+ *  of the repository in the current directory.  This will simply read FILE,
+ *  decode or deserialize it, and call the dump method on the resulting
+ *  Object.  The object must implement the gitlet.Dumpable interface for
+ *  this to work.  For example, you might define your class like this:
  *
  *        import java.io.Serializable;
  *        import java.util.TreeMap;
@@ -29,15 +32,47 @@ import java.io.File;
  */
 public class DumpObj {
 
-    /** Deserialize and apply dump to the contents of each of the files
-     *  in FILES. */
+    /** Decode or deserialize and apply dump to the contents of each of the
+     *  files or stored objects in FILES. */
     public static void main(String... files) {
+        PackStore objects = new PackStore(Repository.PACK_FILE,
+                                          Repository.PACK_INDEX_FILE,
+                                          Repository.compressionLevel(
+                                              Repository.CONFIG_FILE),
+                                          new Trace(null));
         for (String fileName : files) {
-            Dumpable obj = Utils.readObject(new File(fileName),
-                                            Dumpable.class);
-            obj.dump();
+            File file = new File(fileName);
+            byte[] data;
+            if (file.isFile() || fileName.length() != Utils.UID_LENGTH) {
+                data = Utils.readContents(file);
+            } else {
+                data = objects.read(fileName);
+            }
+            decode(data).dump();
             System.out.println("---");
         }
     }
-}
 
+    /** Return the object whose binary encoding or serialized form is
+     *  DATA. */
+    private static Dumpable decode(byte[] data) {
+        switch (Decoder.tag(data)) {
+            case Commit.TAG:
+                return Commit.decode(data);
+            case Tree.TAG:
+                return Tree.decode(data);
+            case StagingArea.TAG:
+                return StagingArea.decode(data);
+            case StatCache.TAG:
+                return StatCache.decode(data, new Trace(null));
+            default:
+                Serializable result =
+                    Utils.deserialize(data, Serializable.class);
+                if (!(result instanceof Dumpable)) {
+                    throw new IllegalArgumentException(
+                        "not a Dumpable object");
+                }
+                return (Dumpable) result;
+        }
+    }
+}
@@ -1,11 +1,9 @@
 package gitlet;
 
-import java.io.Serializable;
-
 /** An interface describing dumpable objects.
  *  @author P. N. Hilfinger
  */
-interface Dumpable extends Serializable {
+interface Dumpable {
     /** Print useful information about this object on System.out. */
     void dump();
 }
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Accumulates the compact binary encoding of a gitlet object.  Integers
+ *  are written as unsigned LEB128 varints (seven bits per byte, low-order
+ *  group first, high bit set on all but the last byte), ids as their
+ *  UID_LENGTH / 2 raw bytes, and strings as a varint byte count followed
+ *  by their UTF-8 encoding.  Every encoding starts with a one-byte tag
+ *  identifying the kind of object and a one-byte format version.  See
+ *  Decoder for the inverse.
+ */
+class Encoder {
+
+    /** Buffer holding the bytes written so far. */
+    private byte[] buf = new byte[256];
+    /** Number of bytes of buf in use. */
+    private int size;
+
+    /** An encoder for an object of kind TAG in format VERSION. */
+    Encoder(byte tag, byte version) {
+        writeByte(tag);
+        writeByte(version);
+    }
+
+    /** Append the single byte B. */
+    Encoder writeByte(int b) {
+        reserve(1);
+        buf[size++] = (byte) b;
+        return this;
+    }
+
+    /** Append the varint encoding of N, treated as unsigned. */
+    Encoder writeVarint(long n) {
+        reserve(10);
+        while ((n & ~0x7fL) != 0) {
+            buf[size++] = (byte) ((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        buf[size++] = (byte) n;
+        return this;
+    }
+
+    /** Append the raw bytes of the hexadecimal SHA-1 id ID. */
+    Encoder writeId(String id) {
+        return writeBytes(Utils.uidToBytes(id));
+    }
+
+    /** Append the length and UTF-8 bytes of S. */
+    Encoder writeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        return writeBytes(bytes);
+    }
+
+    /** Append all of BYTES. */
+    Encoder writeBytes(byte[] bytes) {
+        return writeBytes(bytes, 0, bytes.length);
+    }
+
+    /** Append BYTES[OFFSET .. OFFSET+LENGTH-1]. */
+    Encoder writeBytes(byte[] bytes, int offset, int length) {
+        reserve(length);
+        System.arraycopy(bytes, offset, buf, size, length);
+        size += length;
+        return this;
+    }
+
+    /** Return the encoding built so far. */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, size);
+    }
+
+    /** Ensure that buf has room for N more bytes. */
+    private void reserve(int n) {
+        if (buf.length - size < n) {
+            buf = Arrays.copyOf(buf, Math.max(2 * buf.length, size + n));
+        }
+    }
+}
@@ -6,6 +6,8 @@ package gitlet;
  */
 class GitletException extends RuntimeException {
 
+    /** Version of my serialized form. */
+    private static final long serialVersionUID = 1L;
 
     /** A GitletException with no message. */
     GitletException() {
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A longest common subsequence of two sequences of lines, computed by
+ *  Myers's O(ND) difference algorithm in its linear-space form ("An O(ND)
+ *  Difference Algorithm and Its Variations", 1986).  Lines are represented
+ *  by integers, equal lines by equal integers.  Rather than recording an
+ *  edit script, the result records, for each line of the first sequence,
+ *  the line of the second sequence it is matched with, if any.  Besides
+ *  the sequences and the result, the algorithm uses only two arrays
+ *  proportional to their combined length.
+ */
+class LineDiff {
+
+    /** The first sequence. */
+    private final int[] a;
+    /** The second sequence. */
+    private final int[] b;
+    /** match[i] is the index of the line of b matched with line i of a,
+     *  or -1 if there is none. */
+    private final int[] match;
+    /** Furthest-reaching forward and backward paths, by diagonal. */
+    private final int[] forward, backward;
+    /** Index of diagonal 0 in forward and backward. */
+    private final int origin;
+
+    /** Compute a longest common subsequence of A and B. */
+    LineDiff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        match = new int[a.length];
+        Arrays.fill(match, -1);
+        origin = (a.length + b.length + 1) / 2 + 1;
+        forward = new int[2 * origin + 1];
+        backward = new int[2 * origin + 1];
+        compare(0, a.length, 0, b.length);
+    }
+
+    /** Return the index of the line of the second sequence matched with
+     *  line I of the first, or -1 if line I is not in the common
+     *  subsequence. */
+    int match(int i) {
+        return match[i];
+    }
+
+    /** Match the lines of a[ALO .. AHI-1] with those of b[BLO .. BHI-1]. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            match[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            match[aHi] = bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x += 1, y += 1) {
+            match[x] = y;
+        }
+        compare(aLo, snake[0], bLo, snake[1]);
+        compare(snake[2], aHi, snake[3], bHi);
+    }
+
+    /** Return the middle snake of an optimal path from (ALO, BLO) to (AHI,
+     *  BHI), as the array {x0, y0, x1, y1} of the coordinates of its ends.
+     *  The first and last lines of the two ranges must differ, so that
+     *  the path has at least two edits and the snake divides the problem
+     *  into two strictly smaller ones. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        forward[origin + 1] = 0;
+        backward[origin + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = furthest(forward, k, d);
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[origin + k] = x;
+                if (odd && Math.abs(delta - k) <= d - 1
+                    && x + backward[origin + delta - k] >= n) {
+                    return new int[] { aLo + x0, bLo + y0, aLo + x, bLo + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = furthest(backward, k, d);
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[origin + k] = x;
+                if (!odd && Math.abs(delta - k) <= d
+                    && x + forward[origin + delta - k] >= n) {
+                    return new int[] { aHi - x, bHi - y, aHi - x0, bHi - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Return the x coordinate from which a path with D edits on diagonal K
+     *  starts its final snake, given the furthest-reaching paths with D-1
+     *  edits in V. */
+    private int furthest(int[] v, int k, int d) {
+        if (k == -d || (k != d && v[origin + k - 1] < v[origin + k + 1])) {
+            return v[origin + k + 1];
+        }
+        return v[origin + k - 1] + 1;
+    }
+}
@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/** A line-by-line three-way merge of two versions of a file, "ours" and
+ *  "theirs", that descend from a common "base" version, in the manner of
+ *  diff3.  Each version is compared with the base (see LineDiff).  The
+ *  base lines that both comparisons leave unchanged, and that stay in the
+ *  same order in all three versions, divide the versions into stable
+ *  regions, which are copied to the result, and unstable regions.  An
+ *  unstable region changed by only one side, or changed identically by
+ *  both, takes that change.  One that the two sides changed differently
+ *  is a conflict and is written as
+ *
+ *      <<<<<<< HEAD
+ *      our lines
+ *      =======
+ *      their lines
+ *      >>>>>>>
+ *
+ *  A line includes its terminating newline, if any, so that the result
+ *  reproduces the contents of the inputs exactly.  Apart from the inputs
+ *  and the result, the merge uses space proportional to the number of
+ *  lines.
+ */
+class LineMerge {
+
+    /** Marks the start of a conflict. */
+    private static final String START_MARKER = "<<<<<<< HEAD\n";
+    /** Separates our side of a conflict from theirs. */
+    private static final String MIDDLE_MARKER = "=======\n";
+    /** Marks the end of a conflict. */
+    private static final String END_MARKER = ">>>>>>>\n";
+
+    /** The base, our, and their versions. */
+    private final Lines base, ours, theirs;
+    /** The merged contents. */
+    private final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    /** Number of conflicts in the result. */
+    private int conflicts;
+
+    /** Merge the file contents OURS and THEIRS, which descend from BASE. */
+    LineMerge(byte[] base, byte[] ours, byte[] theirs) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        this.base = new Lines(base, ids);
+        this.ours = new Lines(ours, ids);
+        this.theirs = new Lines(theirs, ids);
+        merge(new LineDiff(this.base.ids, this.ours.ids),
+              new LineDiff(this.base.ids, this.theirs.ids));
+    }
+
+    /** Return the merged contents. */
+    byte[] result() {
+        return result.toByteArray();
+    }
+
+    /** Return true iff the merge left any conflicts. */
+    boolean hasConflicts() {
+        return conflicts > 0;
+    }
+
+    /** Write the merge to result, where OURDIFF and THEIRDIFF are the
+     *  comparisons of the base with our and their versions. */
+    private void merge(LineDiff ourDiff, LineDiff theirDiff) {
+        int o = 0, a = 0, b = 0;
+        int numBase = base.size();
+        while (true) {
+            int k = 0;
+            while (o + k < numBase && ourDiff.match(o + k) == a + k
+                   && theirDiff.match(o + k) == b + k) {
+                k += 1;
+            }
+            if (k > 0) {
+                base.write(o, o + k, result);
+                o += k;
+                a += k;
+                b += k;
+                continue;
+            }
+            int next = o;
+            while (next < numBase
+                   && (ourDiff.match(next) < 0 || theirDiff.match(next) < 0)) {
+                next += 1;
+            }
+            if (next == numBase) {
+                resolve(o, numBase, a, ours.size(), b, theirs.size());
+                return;
+            }
+            int nextA = ourDiff.match(next), nextB = theirDiff.match(next);
+            resolve(o, next, a, nextA, b, nextB);
+            o = next;
+            a = nextA;
+            b = nextB;
+        }
+    }
+
+    /** Write the merge of the unstable region made of base lines
+     *  [OLO .. OHI), our lines [ALO .. AHI), and their lines
+     *  [BLO .. BHI) to result. */
+    private void resolve(int oLo, int oHi, int aLo, int aHi,
+                         int bLo, int bHi) {
+        boolean oursChanged = !base.sameAs(oLo, oHi, ours, aLo, aHi),
+            theirsChanged = !base.sameAs(oLo, oHi, theirs, bLo, bHi);
+        if (!theirsChanged) {
+            ours.write(aLo, aHi, result);
+        } else if (!oursChanged || ours.sameAs(aLo, aHi, theirs, bLo, bHi)) {
+            theirs.write(bLo, bHi, result);
+        } else {
+            conflicts += 1;
+            result.writeBytes(START_MARKER.getBytes(StandardCharsets.UTF_8));
+            ours.write(aLo, aHi, result);
+            result.writeBytes(MIDDLE_MARKER.getBytes(StandardCharsets.UTF_8));
+            theirs.write(bLo, bHi, result);
+            result.writeBytes(END_MARKER.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** The contents of one version of a file, divided into lines. */
+    private static class Lines {
+        /** The contents. */
+        private final byte[] data;
+        /** Line #i is data[starts[i] .. starts[i + 1]). */
+        private final int[] starts;
+        /** ids[i] identifies the text of line #i: two lines have the same
+         *  id iff they are equal. */
+        private final int[] ids;
+
+        /** The lines of DATA, whose texts are numbered using IDS, a map
+         *  from line texts to numbers shared by all versions. */
+        Lines(byte[] data, HashMap<String, Integer> ids) {
+            this.data = data;
+            int count = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n' || i == data.length - 1) {
+                    count += 1;
+                }
+            }
+            starts = new int[count + 1];
+            this.ids = new int[count];
+            for (int i = 0, line = 0; line < count; line += 1) {
+                starts[line] = i;
+                while (data[i] != '\n' && i < data.length - 1) {
+                    i += 1;
+                }
+                i += 1;
+                String text = new String(data, starts[line], i - starts[line],
+                                         StandardCharsets.ISO_8859_1);
+                this.ids[line] = ids.computeIfAbsent(text, t -> ids.size());
+            }
+            starts[count] = data.length;
+        }
+
+        /** Return the number of lines. */
+        int size() {
+            return ids.length;
+        }
+
+        /** Return true iff my lines [LO .. HI) are the same as the lines
+         *  [OTHERLO .. OTHERHI) of OTHER. */
+        boolean sameAs(int lo, int hi, Lines other, int otherLo, int otherHi) {
+            if (hi - lo != otherHi - otherLo) {
+                return false;
+            }
+            for (int i = lo, j = otherLo; i < hi; i += 1, j += 1) {
+                if (ids[i] != other.ids[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Append my lines [LO .. HI) to OUT. */
+        void write(int lo, int hi, ByteArrayOutputStream out) {
+            out.write(data, starts[lo], starts[hi] - starts[lo]);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package gitlet;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/** Prints the entries of the log and global-log commands on the standard
+ *  output as the commits are visited.  Entries are accumulated and written
+ *  in blocks of about BUFFER_CHARS characters, rather than line by line,
+ *  and all of them share one date formatter.
+ */
+class LogPrinter {
+
+    /** Size of the output written in one block. */
+    private static final int BUFFER_CHARS = 1 << 15;
+
+    /** Formats the dates of log entries. */
+    private final SimpleDateFormat dates =
+        new SimpleDateFormat(Commit.LOG_DATE_FORMAT, Locale.US);
+    /** Entries not yet written. */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /** Print the entry of COMMIT, whose id is ID. */
+    void print(String id, Commit commit) {
+        commit.appendLogEntry(id, dates, buffer);
+        buffer.append(System.lineSeparator());
+        if (buffer.length() >= BUFFER_CHARS) {
+            flush();
+        }
+    }
+
+    /** Write any entries not yet written. */
+    void flush() {
+        System.out.print(buffer);
+        System.out.flush();
+        buffer.setLength(0);
+    }
+}
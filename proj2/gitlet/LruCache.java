@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/** A map of bounded size that discards its least recently used entry when
+ *  it overflows, and that counts the lookups it could and could not
+ *  satisfy.  A cache may be used by several threads at once; each lookup
+ *  holds the cache's lock, including while computing a missing value.
+ */
+class LruCache<K, V> {
+
+    /** The entries, in order from least to most recently used. */
+    private final LinkedHashMap<K, V> entries;
+    /** Number of lookups found in the cache since the last reset. */
+    private long hits;
+    /** Number of lookups not found in the cache since the last reset. */
+    private long misses;
+
+    /** An empty cache holding at most CAPACITY entries. */
+    LruCache(int capacity) {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Return the value cached for KEY, computing it with LOADER and
+     *  caching it if it is not present. */
+    synchronized V get(K key, Function<K, V> loader) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits += 1;
+        } else {
+            misses += 1;
+            value = loader.apply(key);
+            entries.put(key, value);
+        }
+        return value;
+    }
+
+    /** Return the number of lookups satisfied from this cache since it was
+     *  created or its counts were last reset. */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /** Return the number of lookups that had to compute their values since
+     *  this cache was created or its counts were last reset. */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /** Return the number of entries currently cached. */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** Discard all entries. */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /** Zero the hit and miss counts. */
+    synchronized void resetCounts() {
+        hits = misses = 0;
+    }
+}
@@ -1,24 +1,268 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static gitlet.Utils.*;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
- *  @author TODO
  */
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  <COMMAND> <OPERAND1> <OPERAND2> ...
+     *
+     *  or: java gitlet.Main batch [FILE]
+     *  which runs the commands in FILE (default: the standard input), one
+     *  per line, in a single process.  See runBatch.
+     *
+     *  Each command holds the repository's RepositoryLock while it runs,
+     *  shared if the command only reads the repository.  If the
+     *  environment variable Trace.TRACE_VARIABLE is set, each command then
+     *  reports where its time went to the standard error (see Trace).
      */
     public static void main(String[] args) {
-        // TODO: what if args is empty?
+        if (args.length > 0 && args[0].equals("batch")) {
+            if (args.length > 2) {
+                message("Incorrect operands.");
+                System.exit(0);
+            }
+            runBatch(args.length == 1 ? null : new File(args[1]));
+            return;
+        }
+        try {
+            RepositoryLock lock =
+                RepositoryLock.acquire(Repository.GITLET_DIR,
+                                       args.length > 0 && readOnly(args[0]));
+            try {
+                run(new Repository(), args);
+            } finally {
+                if (lock != null) {
+                    lock.close();
+                }
+            }
+        } catch (GitletException excp) {
+            message("%s", excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /** Run the gitlet commands in SCRIPT, or in the standard input if
+     *  SCRIPT is null.  Each non-blank line not starting with '#' is one
+     *  command, whose words are separated by blanks and may be quoted with
+     *  '...' or "..." as in a shell (with \ escaping the next character
+     *  outside single quotes).  Each command behaves and prints exactly as
+     *  if it had been run on its own, and a failing command does not stop
+     *  those after it.  Repository state read by one command is reused by
+     *  the next unless the first one fails.  The repository is locked
+     *  exclusively from the first command run in it until the end. */
+    static void runBatch(File script) {
+        RepositoryLock lock = null;
+        try (BufferedReader in = new BufferedReader(
+                 script == null
+                 ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                 : Files.newBufferedReader(script.toPath(),
+                                           StandardCharsets.UTF_8))) {
+            Repository repo = new Repository();
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    if (lock == null) {
+                        lock = RepositoryLock.acquire(Repository.GITLET_DIR,
+                                                      false);
+                        if (lock != null) {
+                            repo = new Repository();
+                        }
+                    }
+                    run(repo, splitCommandLine(line));
+                } catch (GitletException excp) {
+                    message("%s", excp.getMessage());
+                    repo = new Repository();
+                }
+                System.out.flush();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
+        }
+    }
+
+    /** Return true iff the command named COMMAND only reads the
+     *  repository, and so may share the repository lock. */
+    static boolean readOnly(String command) {
+        switch (command) {
+            case "log":
+            case "global-log":
+            case "find":
+            case "status":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Return the words of command line LINE, as described for
+     *  runBatch. */
+    static String[] splitCommandLine(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (c == quote) {
+                quote = 0;
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else {
+                word.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw error("Unterminated quotation.");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /** Execute the single gitlet command ARGS on REPO.  Throws a
+     *  GitletException whose message is to be printed if the command
+     *  fails. */
+    static void run(Repository repo, String... args) {
+        if (args.length == 0) {
+            throw error("Please enter a command.");
+        }
         String firstArg = args[0];
-        switch(firstArg) {
+        if (!firstArg.equals("init")) {
+            repo.checkInitialized();
+        }
+        switch (firstArg) {
             case "init":
-                // TODO: handle the `init` command
+                validateNumArgs(args, 1);
+                repo.init();
                 break;
             case "add":
-                // TODO: handle the `add [filename]` command
+                validateNumArgs(args, 2);
+                repo.add(args[1]);
+                break;
+            case "commit":
+                validateNumArgs(args, 2);
+                repo.commit(args[1]);
                 break;
-            // TODO: FILL THE REST IN
+            case "rm":
+                validateNumArgs(args, 2);
+                repo.rm(args[1]);
+                break;
+            case "log":
+                if (args.length == 3 && args[1].equals("--")) {
+                    repo.log(args[2]);
+                } else {
+                    validateNumArgs(args, 1);
+                    repo.log();
+                }
+                break;
+            case "global-log":
+                validateNumArgs(args, 1);
+                repo.globalLog();
+                break;
+            case "find":
+                validateNumArgs(args, 2);
+                repo.find(args[1]);
+                break;
+            case "status":
+                validateNumArgs(args, 1);
+                repo.status();
+                break;
+            case "checkout":
+                if (args.length == 3 && args[1].equals("--")) {
+                    repo.checkoutFile(args[2]);
+                } else if (args.length == 4 && args[2].equals("--")) {
+                    repo.checkoutFile(args[1], args[3]);
+                } else if (args.length == 2) {
+                    repo.checkoutBranch(args[1]);
+                } else {
+                    throw error("Incorrect operands.");
+                }
+                break;
+            case "branch":
+                validateNumArgs(args, 2);
+                repo.branch(args[1]);
+                break;
+            case "rm-branch":
+                validateNumArgs(args, 2);
+                repo.rmBranch(args[1]);
+                break;
+            case "reset":
+                validateNumArgs(args, 2);
+                repo.reset(args[1]);
+                break;
+            case "merge":
+                validateNumArgs(args, 2);
+                repo.merge(args[1]);
+                break;
+            case "gc":
+                validateNumArgs(args, 1);
+                repo.gc();
+                break;
+            case "add-remote":
+                validateNumArgs(args, 3);
+                repo.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                validateNumArgs(args, 2);
+                repo.rmRemote(args[1]);
+                break;
+            case "push":
+                validateNumArgs(args, 3);
+                repo.push(args[1], args[2]);
+                break;
+            case "fetch":
+                validateNumArgs(args, 3);
+                repo.fetch(args[1], args[2]);
+                break;
+            case "pull":
+                validateNumArgs(args, 3);
+                repo.pull(args[1], args[2]);
+                break;
+            default:
+                throw error("No command with that name exists.");
+        }
+        repo.save();
+        repo.reportDebugStats();
+        repo.reportTrace(firstArg);
+    }
+
+    /** Throw a GitletException unless ARGS, which includes the command
+     *  name, has exactly N elements. */
+    static void validateNumArgs(String[] args, int n) {
+        if (args.length != n) {
+            throw error("Incorrect operands.");
         }
     }
 }
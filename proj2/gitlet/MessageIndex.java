@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** An index from commit messages to the ids of the commits that have
+ *  them, so that find need not decode every commit.  The index file
+ *  consists of a 12-byte header (MAGIC, VERSION, number of commits
+ *  indexed) followed by one ENTRY_BYTES-byte entry per commit of the
+ *  form
+ *
+ *      message hash (4 bytes)  raw commit id (20 bytes)
+ *
+ *  where the hash is String.hashCode of the message.  The entries are
+ *  sorted by hash (as a signed integer) and then by id, so that a lookup
+ *  is a binary search for the first entry with the hash of the message
+ *  sought.  Since different messages may share a hash, the caller must
+ *  check the messages of the commits found.  Each flush merges the new
+ *  entries into a copy of the index, which the command's Transaction
+ *  then puts in place of the old one, as for the object index.
+ *
+ *  The index is current if the number of commits in its header is that
+ *  of the commits in the object store, which the store keeps in its own
+ *  index header.  If it is missing, malformed, or out of date (for
+ *  example, after a crash between replacing the object index and
+ *  replacing this one), it is rebuilt from the commits themselves.
+ */
+class MessageIndex {
+
+    /** Magic number at the start of an index file ("GMSG"). */
+    private static final int MAGIC = 0x474d5347;
+    /** Format version of the index file. */
+    private static final int VERSION = 2;
+    /** Length of the index file header. */
+    private static final int HEADER_BYTES = 12;
+    /** Length of a raw SHA-1 id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /** Length of one entry. */
+    private static final int ENTRY_BYTES = 4 + ID_BYTES;
+
+    /** The index file. */
+    private final File file;
+    /** Entries added since the last flush, each in the format of a stored
+     *  entry, in no particular order. */
+    private final ArrayList<ByteBuffer> added = new ArrayList<>();
+
+    /** An index kept in FILE, which need not exist yet. */
+    MessageIndex(File file) {
+        this.file = file;
+    }
+
+    /** Record that the commit with id ID has message MESSAGE. */
+    void add(String id, String message) {
+        added.add(entry(id, message));
+    }
+
+    /** Return the ids of the commits whose messages may be MESSAGE, in no
+     *  particular order, or null if the index is not current for an
+     *  object store holding COMMITS commits. */
+    List<String> candidates(String message, int commits) {
+        ByteBuffer stored = read();
+        if (stored == null || stored.getInt(8) + added.size() != commits) {
+            return null;
+        }
+        int hash = message.hashCode();
+        ArrayList<String> result = new ArrayList<>();
+        byte[] raw = new byte[ID_BYTES];
+        int lo = 0, hi = stored.getInt(8);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (stored.getInt(position(mid)) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int pos = position(lo);
+             pos < stored.capacity() && stored.getInt(pos) == hash;
+             pos += ENTRY_BYTES) {
+            stored.get(pos + 4, raw);
+            result.add(bytesToUid(raw, 0, ID_BYTES));
+        }
+        for (ByteBuffer entry : added) {
+            if (entry.getInt(0) == hash) {
+                entry.get(4, raw);
+                result.add(bytesToUid(raw, 0, ID_BYTES));
+            }
+        }
+        return result;
+    }
+
+    /** Replace the index with one holding exactly the commits in
+     *  MESSAGES, which maps commit ids to their messages.  Several
+     *  processes may do this at once, each replacing the file whole. */
+    void rebuild(Map<String, String> messages) {
+        ArrayList<ByteBuffer> entries = new ArrayList<>();
+        messages.forEach((id, message) -> entries.add(entry(id, message)));
+        ByteBuffer result = merge(null, entries);
+        File tmp = new File(file.getPath() + "."
+                            + ProcessHandle.current().pid() + ".tmp");
+        write(tmp, result);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        added.clear();
+    }
+
+    /** Arrange for TXN to replace the index file with one that also holds
+     *  the entries added since the last flush.  If the index file is
+     *  missing or malformed, the new one holds only those entries, and so
+     *  will not be current. */
+    void flush(Transaction txn) {
+        if (added.isEmpty()) {
+            return;
+        }
+        txn.write(file, merge(read(), added));
+        added.clear();
+    }
+
+    /** Return the contents of an index file holding the entries of STORED
+     *  (the contents of an index file, or null for none) and ENTRIES,
+     *  ready to be read.  Sorts ENTRIES. */
+    private static ByteBuffer merge(ByteBuffer stored,
+                                    List<ByteBuffer> entries) {
+        entries.sort(MessageIndex::compare);
+        int old = stored == null ? 0 : stored.getInt(8);
+        int total = old + entries.size();
+        ByteBuffer result = ByteBuffer.allocate(position(total));
+        result.putInt(MAGIC).putInt(VERSION).putInt(total);
+        int k = 0;
+        for (ByteBuffer entry : entries) {
+            while (k < old && compare(stored.slice(position(k), ENTRY_BYTES),
+                                      entry) < 0) {
+                result.put(stored.slice(position(k), ENTRY_BYTES));
+                k += 1;
+            }
+            result.put(entry.duplicate());
+        }
+        for (; k < old; k += 1) {
+            result.put(stored.slice(position(k), ENTRY_BYTES));
+        }
+        return result.flip();
+    }
+
+    /** Compare entries X and Y by hash and then by id. */
+    private static int compare(ByteBuffer x, ByteBuffer y) {
+        int c = Integer.compare(x.getInt(0), y.getInt(0));
+        for (int i = 4; c == 0 && i < ENTRY_BYTES; i += 1) {
+            c = Integer.compare(x.get(i) & 0xff, y.get(i) & 0xff);
+        }
+        return c;
+    }
+
+    /** Return the position in the index file of entry #K. */
+    private static int position(int k) {
+        return HEADER_BYTES + k * ENTRY_BYTES;
+    }
+
+    /** Return the entry for the commit with id ID and message MESSAGE,
+     *  ready to be read. */
+    private static ByteBuffer entry(String id, String message) {
+        ByteBuffer result = ByteBuffer.allocate(ENTRY_BYTES);
+        result.putInt(message.hashCode()).put(uidToBytes(id)).flip();
+        return result;
+    }
+
+    /** Return the contents of the index file, or null if it is missing or
+     *  malformed. */
+    private ByteBuffer read() {
+        if (!file.isFile()) {
+            return null;
+        }
+        ByteBuffer result;
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            result = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (result.capacity() < HEADER_BYTES || result.getInt(0) != MAGIC
+            || result.getInt(4) != VERSION
+            || result.capacity() != position(result.getInt(8))) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Write all of DATA to TARGET, replacing its contents. */
+    private static void write(File target, ByteBuffer data) {
+        try (FileChannel out = FileChannel.open(target.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
@@ -0,0 +1,1145 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** The object database of a gitlet repository.  Every blob and commit is
+ *  appended as one record to a single pack file, and a separate index file
+ *  maps each object's SHA-1 id to the position of its record.  The index
+ *  is kept sorted by id, so that a lookup is a binary search over
+ *  fixed-width entries.  Both files are read through memory mappings, so
+ *  that fetching an object never opens a file of its own.  Since one
+ *  mapping can cover at most 2 GiB, the pack is mapped as a series of
+ *  segments of SEGMENT_BYTES bytes each, and positions in it are always
+ *  longs; a record may span segments.
+ *
+ *  The pack file consists of an 8-byte header (PACK_MAGIC, PACK_VERSION)
+ *  followed by records of the form
+ *
+ *      type (1 byte)  length (8 bytes)  payload (length bytes)
+ *
+ *  (In packs of version 1, the length has only 4 bytes, which limits
+ *  payloads to 2 GiB.  Such a pack keeps its format as objects are
+ *  appended to it; gc rewrites it in the current one.)
+ *
+ *  The index file consists of a 24-byte header (INDEX_MAGIC,
+ *  INDEX_VERSION, entry count, and the numbers of blob, commit, and tree
+ *  entries), a fanout table of 256 4-byte counts, and ENTRY_BYTES-byte
+ *  entries of the form
+ *
+ *      raw id (20 bytes)  type (1 byte)  payload offset (8 bytes)
+ *      payload length (8 bytes)
+ *
+ *  The counts by type let count answer without walking the entries.  An
+ *  index of version 2 (whose payload lengths have 4 bytes) or 3 (whose
+ *  12-byte header has only the entry count) is converted to the current
+ *  form when it is read, and is replaced by one in that form on the next
+ *  flush.
+ *
+ *  As in Git's .idx files, fanout entry #B is the number of entries whose
+ *  ids have a first byte of at most B, so that the entries starting with
+ *  byte B are those numbered fanout[B-1] up to fanout[B].  A search for
+ *  an id or an abbreviated id thus starts within a range about 1/256th
+ *  the size of the index.
+ *
+ *  Blobs are stored compressed with deflate (zlib format) at the level
+ *  given when the store is created, unless that level is 0 or
+ *  compression would not make them smaller.  The high bit (DEFLATED) of
+ *  the type byte of a record and of its index entry marks a compressed
+ *  payload.  An object's id is always the hash of its uncompressed
+ *  contents.
+ *
+ *  A blob may also be written with the id of a similar blob (typically
+ *  the previous version of the same file) as a suggested base.  If the
+ *  base is already in the pack, the new blob is large enough, and the
+ *  resulting delta (see Delta) is at most half its size, the blob is
+ *  stored as the raw id of its base followed by the delta, which is then
+ *  deflated like any other payload.  The DELTA bit of the type byte marks
+ *  such a record.  No chain of deltas is longer than MAX_DELTA_DEPTH,
+ *  and recently rebuilt bases are cached, so that reading a version of a
+ *  frequently edited file does not replay its whole history.
+ *
+ *  Objects may also be copied from another store (see copyFrom), in
+ *  which case their records are transferred between the pack files as
+ *  they are, without being inflated or rebuilt.
+ *
+ *  Objects written during a command are buffered and appended to the pack
+ *  by flush, which then has the command's Transaction replace the index
+ *  with a merged copy.  The pack itself is never rewritten in place.
+ *  Reads may proceed concurrently from several threads, provided no
+ *  writes or flushes overlap them.
+ */
+class PackStore {
+
+    /** Type tag of a blob record. */
+    static final byte BLOB = 1;
+    /** Type tag of a commit record. */
+    static final byte COMMIT = 2;
+    /** Type tag of a tree record. */
+    static final byte TREE = 3;
+
+    /** Flag in a stored type byte marking a deflated payload. */
+    private static final int DEFLATED = 0x80;
+    /** Flag in a stored type byte marking a delta against a base. */
+    private static final int DELTA = 0x40;
+    /** Mask extracting the type tag from a stored type byte. */
+    private static final int TYPE_MASK = 0x3f;
+    /** The longest chain of deltas needed to rebuild any blob. */
+    static final int MAX_DELTA_DEPTH = 10;
+    /** Blobs smaller than this are never stored as deltas. */
+    private static final int MIN_DELTA_BYTES = 256;
+    /** Blobs and bases larger than this are never stored as deltas, so
+     *  that computing a delta does not hold huge files in memory. */
+    private static final int MAX_DELTA_BYTES = 1 << 24;
+    /** The number of rebuilt delta bases kept in memory. */
+    private static final int DELTA_CACHE_SIZE = 32;
+    /** Size of the buffer through which payloads are deflated. */
+    private static final int DEFLATE_BUFFER_SIZE = 1 << 16;
+
+    /** Magic number at the start of a pack file ("GPAK"). */
+    private static final int PACK_MAGIC = 0x4750414b;
+    /** Magic number at the start of an index file ("GIDX"). */
+    private static final int INDEX_MAGIC = 0x47494458;
+    /** Format version of the pack file. */
+    private static final int PACK_VERSION = 2;
+    /** Format version of packs whose records have 4-byte lengths. */
+    private static final int OLD_PACK_VERSION = 1;
+    /** Format version of the index file. */
+    private static final int INDEX_VERSION = 4;
+    /** Format version of indices without counts by type. */
+    private static final int UNCOUNTED_INDEX_VERSION = 3;
+    /** Format version of indices whose entries have 4-byte lengths (and
+     *  which lack counts by type). */
+    private static final int OLD_INDEX_VERSION = 2;
+    /** Length of the pack file header. */
+    private static final int PACK_HEADER_BYTES = 8;
+    /** The largest type tag. */
+    private static final int NUM_TYPES = 3;
+    /** Length of the header of an index of OLD_INDEX_VERSION or
+     *  UNCOUNTED_INDEX_VERSION. */
+    private static final int OLD_INDEX_HEADER_BYTES = 12;
+    /** Length of the index file header. */
+    private static final int INDEX_HEADER_BYTES =
+        OLD_INDEX_HEADER_BYTES + 4 * NUM_TYPES;
+    /** Length of the fanout table of the index file. */
+    private static final int FANOUT_BYTES = 256 * 4;
+    /** Length of a raw SHA-1 id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    /** Length of one index entry. */
+    private static final int ENTRY_BYTES = ID_BYTES + 1 + 8 + 8;
+    /** Length of one entry of an index of OLD_INDEX_VERSION. */
+    private static final int OLD_ENTRY_BYTES = ID_BYTES + 1 + 8 + 4;
+    /** Length of the header of a pack record. */
+    private static final int RECORD_HEADER_BYTES = 1 + 8;
+    /** Length of the header of a record in a pack of OLD_PACK_VERSION. */
+    private static final int OLD_RECORD_HEADER_BYTES = 1 + 4;
+    /** Length of each mapped segment of the pack file (but the last). */
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    /** The pack file. */
+    private final File packFile;
+    /** The index file. */
+    private final File indexFile;
+    /** The deflate level (0-9, or -1 for the zlib default) of blobs
+     *  appended to the pack; 0 stores them uncompressed. */
+    private final int level;
+    /** Records the loading and writing of objects. */
+    private final Trace trace;
+    /** Mappings of the consecutive segments of the pack file, or null if
+     *  not yet mapped. */
+    private ByteBuffer[] pack;
+    /** Mapping of the index file, or null if not yet mapped. */
+    private ByteBuffer index;
+    /** Number of entries in index. */
+    private int count;
+    /** Objects written since the last flush, by id, in the order they
+     *  are to be appended to the pack. */
+    private final LinkedHashMap<String, Record> pending =
+        new LinkedHashMap<>();
+    /** Contents of recently used delta bases, by id. */
+    private final LruCache<String, byte[]> deltaBases =
+        new LruCache<>(DELTA_CACHE_SIZE);
+
+    /** A store whose pack and index are the files PACK and INDEX, which
+     *  need not exist yet, which compresses blobs at deflate level
+     *  LEVEL, and whose work is recorded in TRACE. */
+    PackStore(File pack, File index, int level, Trace trace) {
+        if (level < Deflater.DEFAULT_COMPRESSION
+            || level > Deflater.BEST_COMPRESSION) {
+            throw error("Invalid compression level: %d", level);
+        }
+        packFile = pack;
+        indexFile = index;
+        this.level = level;
+        this.trace = trace;
+    }
+
+    /** Return true iff an object with id ID is stored. */
+    boolean contains(String id) {
+        return pending.containsKey(id) || find(id) >= 0;
+    }
+
+    /** Return the type tag of the object with id ID, or 0 if there is
+     *  none.  An ID that is not UID_LENGTH lower-case hexadecimal digits
+     *  names nothing. */
+    byte type(String id) {
+        if (id.length() != UID_LENGTH || !isHexPrefix(id)) {
+            return 0;
+        }
+        Record rec = pending.get(id);
+        if (rec != null) {
+            return rec.type;
+        }
+        int k = find(id);
+        return k < 0 ? 0
+            : (byte) (index().get(entryPosition(k) + ID_BYTES) & TYPE_MASK);
+    }
+
+    /** Return the contents of the object with id ID.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    byte[] read(String id) {
+        long start = trace.start();
+        byte[] result = load(id);
+        trace.end(Trace.LOAD, start, result.length);
+        return result;
+    }
+
+    /** Return the contents of the object with id ID, as for read, but
+     *  without recording the load. */
+    private byte[] load(String id) {
+        Record rec = pending.get(id);
+        if (rec != null) {
+            return rec.from != null ? rec.from.load(id)
+                : rec.source == null ? rec.contents
+                : trace.readContents(rec.source);
+        }
+        int k = find(id);
+        if (k < 0) {
+            throw new IllegalArgumentException("no object " + id);
+        }
+        if (isDelta(k)) {
+            byte[] base = deltaBases.get(deltaBase(k), this::load);
+            return Delta.apply(base, payload(k, ID_BYTES));
+        }
+        return payload(k, 0);
+    }
+
+    /** Return a stream of the contents of the object with id ID, which
+     *  inflates them as they are read if they are stored compressed.
+     *  (Blobs stored as deltas are rebuilt whole before being streamed.)
+     *  Throws IllegalArgumentException if there is no such object. */
+    InputStream open(String id) {
+        Record rec = pending.get(id);
+        if (rec != null) {
+            if (rec.from != null) {
+                return rec.from.open(id);
+            } else if (rec.source == null) {
+                return new ByteArrayInputStream(rec.contents);
+            }
+            try {
+                return new FileInputStream(rec.source);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        int k = find(id);
+        if (k < 0) {
+            throw new IllegalArgumentException("no object " + id);
+        }
+        if (isDelta(k)) {
+            return new ByteArrayInputStream(load(id));
+        }
+        InputStream in = stored(k, 0);
+        return deflated(k) ? new InflaterInputStream(in) : in;
+    }
+
+    /** Replace the contents of TARGET with those of the object with id
+     *  ID, streaming them rather than reading them whole.  This is
+     *  recorded as a WRITE, which includes the time taken to load the
+     *  object. */
+    void copy(String id, File target) {
+        long start = trace.start();
+        try (InputStream in = open(id)) {
+            long size = Files.copy(in, target.toPath(),
+                                   StandardCopyOption.REPLACE_EXISTING);
+            trace.end(Trace.WRITE, start, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Store CONTENTS as an object of type TYPE with id ID, unless an
+     *  object with that id is already present. */
+    void write(String id, byte type, byte[] contents) {
+        if (!contains(id)) {
+            pending.put(id, new Record(type, contents, null,
+                                       contents.length, null));
+        }
+    }
+
+    /** Store the current contents of SOURCE as an object of type TYPE with
+     *  id ID, unless an object with that id is already present.  The
+     *  contents are copied from SOURCE into the pack by the next flush,
+     *  without passing through the heap unless they are stored as a
+     *  delta, and are hashed as they are copied; if SOURCE has changed so
+     *  that they no longer have id ID, the flush fails.  BASE, if not null,
+     *  is the id of a stored object that the new one is likely to
+     *  resemble, against which it may be stored as a delta. */
+    void write(String id, byte type, File source, String base) {
+        if (!contains(id)) {
+            pending.put(id, new Record(type, null, source, source.length(),
+                                       base));
+        }
+    }
+
+    /** Store the objects of SOURCE with ids IDS that are not already
+     *  present.  The stored record of each object is copied unchanged
+     *  (still compressed, and still a delta if it was one) from SOURCE's
+     *  pack to this one by the next flush, without being decoded.  A
+     *  delta is copied only if its base is, or will then be, in this store
+     *  and the chain of deltas would not grow longer than MAX_DELTA_DEPTH;
+     *  otherwise the object is rebuilt and stored whole.  SOURCE must not
+     *  be changed until the flush. */
+    void copyFrom(PackStore source, List<String> ids) {
+        HashSet<String> wanted = new HashSet<>(ids);
+        HashMap<String, Integer> depths = new HashMap<>();
+        for (String id : ids) {
+            copyFrom(source, id, wanted, depths);
+        }
+    }
+
+    /** Store the object of SOURCE with id ID as for copyFrom, first
+     *  copying the base of its delta if that is in WANTED, and return the
+     *  length of the chain of deltas needed to rebuild it from this store,
+     *  or MAX_DELTA_DEPTH if that is not yet known.  DEPTHS holds the
+     *  results for the objects already copied. */
+    private int copyFrom(PackStore source, String id, Set<String> wanted,
+                         Map<String, Integer> depths) {
+        Integer known = depths.get(id);
+        if (known != null) {
+            return known;
+        }
+        int depth;
+        int k = find(id);
+        if (pending.containsKey(id)) {
+            depth = MAX_DELTA_DEPTH;
+        } else if (k >= 0) {
+            depth = deltaDepth(k);
+        } else {
+            int j = source.find(id);
+            if (j < 0) {
+                throw new IllegalArgumentException("no object " + id);
+            }
+            depth = 0;
+            if (source.isDelta(j)) {
+                String base = source.deltaBase(j);
+                depth = contains(base) || wanted.contains(base)
+                    ? copyFrom(source, base, wanted, depths) + 1
+                    : MAX_DELTA_DEPTH + 1;
+            }
+            if (depth > MAX_DELTA_DEPTH) {
+                byte[] contents = source.read(id);
+                pending.put(id, new Record(source.type(id), contents, null,
+                                           contents.length, null));
+                depth = 0;
+            } else {
+                pending.put(id, new Record(source, j));
+            }
+        }
+        depths.put(id, depth);
+        return depth;
+    }
+
+    /** Return the number of stored objects. */
+    int size() {
+        index();
+        return count + pending.size();
+    }
+
+    /** Return the number of stored objects of type TYPE.  The count of
+     *  flushed objects is read from the index header. */
+    int count(byte type) {
+        ByteBuffer idx = index();
+        int result = count == 0 ? 0 : idx.getInt(typeCountPosition(type));
+        for (Record rec : pending.values()) {
+            if (rec.type == type) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the ids of all stored objects of type TYPE, in
+     *  lexicographic order. */
+    List<String> ids(byte type) {
+        ArrayList<String> result = new ArrayList<>();
+        ByteBuffer idx = index();
+        byte[] raw = new byte[ID_BYTES];
+        for (int k = 0; k < count; k += 1) {
+            int entry = entryPosition(k);
+            if ((idx.get(entry + ID_BYTES) & TYPE_MASK) == type) {
+                idx.get(entry, raw);
+                result.add(bytesToUid(raw, 0, ID_BYTES));
+            }
+        }
+        for (Map.Entry<String, Record> e : pending.entrySet()) {
+            if (e.getValue().type == type) {
+                result.add(e.getKey());
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Return the ids of the first LIMIT stored objects of type TYPE, in
+     *  lexicographic order, whose ids start with PREFIX.  A PREFIX that
+     *  is not a string of lower-case hexadecimal digits matches
+     *  nothing. */
+    List<String> idsWithPrefix(String prefix, byte type, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!isHexPrefix(prefix)) {
+            return result;
+        }
+        String low = prefix + "0".repeat(UID_LENGTH - prefix.length());
+        ByteBuffer idx = index();
+        byte[] raw = new byte[ID_BYTES];
+        for (int k = lowerBound(uidToBytes(low));
+             k < count && result.size() < limit; k += 1) {
+            int entry = entryPosition(k);
+            idx.get(entry, raw);
+            String id = bytesToUid(raw, 0, ID_BYTES);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            if ((idx.get(entry + ID_BYTES) & TYPE_MASK) == type) {
+                result.add(id);
+            }
+        }
+        boolean added = false;
+        for (Map.Entry<String, Record> e : pending.entrySet()) {
+            if (e.getKey().startsWith(prefix)
+                && e.getValue().type == type) {
+                result.add(e.getKey());
+                added = true;
+            }
+        }
+        if (added) {
+            result.sort(null);
+        }
+        return result.size() <= limit ? result : result.subList(0, limit);
+    }
+
+    /** Append all objects written since the last flush to the pack, and
+     *  arrange for TXN to replace the index with one that includes them.
+     *  Lookups use the new index at once.  Each pack from which records
+     *  are copied is opened once for the whole flush. */
+    void flush(Transaction txn) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        TreeMap<String, ByteBuffer> entries = new TreeMap<>();
+        HashMap<File, FileChannel> packs = new HashMap<>();
+        long started = trace.start();
+        try (FileChannel out = FileChannel.open(packFile.toPath(),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            long size = out.size();
+            boolean old = size > 0 && packVersion(out) == OLD_PACK_VERSION;
+            int headerBytes = old ? OLD_RECORD_HEADER_BYTES
+                : RECORD_HEADER_BYTES;
+            if (old) {
+                checkOldLengths();
+            }
+            out.position(size);
+            if (out.position() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_BYTES);
+                header.putInt(PACK_MAGIC).putInt(PACK_VERSION).flip();
+                writeFully(out, header);
+            }
+            for (Map.Entry<String, Record> e : pending.entrySet()) {
+                Record rec = e.getValue();
+                if (rec.from != null) {
+                    long start = out.position();
+                    writeFully(out, recordHeader(rec.tag, rec.length, old));
+                    FileChannel in = packs.get(rec.source);
+                    if (in == null) {
+                        in = FileChannel.open(rec.source.toPath(),
+                                              StandardOpenOption.READ);
+                        packs.put(rec.source, in);
+                    }
+                    copy(in, rec.source, rec.offset, rec.length, out);
+                    entries.put(e.getKey(),
+                                entry(e.getKey(), rec.tag,
+                                      start + headerBytes, rec.length));
+                    continue;
+                }
+                byte[] delta = delta(e.getKey(), rec);
+                byte[] contents = delta != null ? delta : rec.contents;
+                File source = delta != null ? null : rec.source;
+                long length = delta != null ? delta.length : rec.length;
+                int tag = delta != null ? rec.type | DELTA : rec.type;
+                long start = out.position();
+                out.position(start + headerBytes);
+                if (delta != null) {
+                    writeFully(out, ByteBuffer.wrap(uidToBytes(rec.base)));
+                }
+                long body = out.position();
+                MessageDigest md = source == null ? null : sha1Digest();
+                if (rec.type == BLOB && level != 0
+                    && deflate(contents, source, length, md, out) < length) {
+                    tag |= DEFLATED;
+                } else {
+                    out.truncate(body);
+                    out.position(body);
+                    if (source == null) {
+                        writeFully(out, ByteBuffer.wrap(contents));
+                    } else {
+                        md.reset();
+                        try (InputStream in = new DigestInputStream(
+                                 new FileInputStream(source), md)) {
+                            copyPrefix(in, length,
+                                       Channels.newOutputStream(out));
+                        }
+                    }
+                }
+                if (md != null && !hexDigest(md).equals(e.getKey())) {
+                    throw new IllegalArgumentException(
+                        "file changed while being stored: " + source);
+                }
+                long end = out.position();
+                long stored = end - start - headerBytes;
+                out.position(start);
+                writeFully(out, recordHeader(tag, stored, old));
+                entries.put(e.getKey(),
+                            entry(e.getKey(), tag, start + headerBytes,
+                                  stored));
+                out.position(end);
+            }
+            trace.end(Trace.WRITE, started, out.position() - size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            for (FileChannel in : packs.values()) {
+                try {
+                    in.close();
+                } catch (IOException excp) {
+                    /* Ignore: the pack was only read. */
+                }
+            }
+        }
+        ByteBuffer added = ByteBuffer.allocate(entries.size() * ENTRY_BYTES);
+        entries.values().forEach(added::put);
+        txn.appended(packFile);
+        writeIndex(added, txn);
+        pending.clear();
+        pack = null;
+    }
+
+    /** Arrange for TXN to replace the pack and index with ones holding
+     *  only the objects with ids IDS, in that order, and return the
+     *  total size of the new files.  The records are copied as by
+     *  copyFrom, so deltas are kept where their bases survive.  The new
+     *  files are written beside the old ones and renamed over them when
+     *  TXN commits, the pack first; if a crash intervenes between the
+     *  renames, the next use of the store completes them.  There must
+     *  be no pending objects, and the store must not be used again until
+     *  TXN has committed. */
+    long repack(List<String> ids, Transaction txn) {
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("repack with pending objects");
+        }
+        File newPack = repacked(packFile), newIndex = repacked(indexFile);
+        newPack.delete();
+        newIndex.delete();
+        PackStore result = new PackStore(newPack, newIndex, level, trace);
+        result.copyFrom(this, ids);
+        result.flush(txn);
+        txn.rename(newPack, packFile);
+        txn.rename(newIndex, indexFile);
+        pack = null;
+        index = null;
+        deltaBases.clear();
+        return newPack.length() + result.index().capacity();
+    }
+
+    /** Return the format version of the pack file open as OUT, which is
+     *  not empty. */
+    private static int packVersion(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_BYTES);
+        while (header.hasRemaining()
+               && out.read(header, header.position()) > 0) {
+            continue;
+        }
+        if (header.hasRemaining() || header.getInt(0) != PACK_MAGIC) {
+            throw error("Corrupted object pack.");
+        }
+        return header.getInt(4);
+    }
+
+    /** Throw a GitletException if a pending object may be too large for
+     *  a pack of OLD_PACK_VERSION.  (A stored payload is never longer
+     *  than the object's contents plus the id of a delta base.) */
+    private void checkOldLengths() {
+        for (Map.Entry<String, Record> e : pending.entrySet()) {
+            Record rec = e.getValue();
+            if (rec.length > Integer.MAX_VALUE - ID_BYTES) {
+                throw error("Object too large for this repository's pack "
+                            + "format; run gc to upgrade it: %s",
+                            rec.from == null && rec.source != null
+                            ? rec.source.getName() : e.getKey());
+            }
+        }
+    }
+
+    /** Return the header of a pack record whose stored type byte is TAG
+     *  and whose payload has LENGTH bytes, in the form for a pack of
+     *  OLD_PACK_VERSION iff OLD. */
+    private static ByteBuffer recordHeader(int tag, long length,
+                                           boolean old) {
+        ByteBuffer result;
+        if (old) {
+            result = ByteBuffer.allocate(OLD_RECORD_HEADER_BYTES);
+            result.put((byte) tag).putInt((int) length);
+        } else {
+            result = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            result.put((byte) tag).putLong(length);
+        }
+        return result.flip();
+    }
+
+    /** Make a new index containing the current entries merged with the
+     *  sorted entries in ADDED, use it for later lookups, and arrange for
+     *  it to replace the index file when TXN commits. */
+    private void writeIndex(ByteBuffer added, Transaction txn) {
+        ByteBuffer old = index();
+        int numAdded = added.position() / ENTRY_BYTES;
+        int total = count + numAdded;
+        ByteBuffer result = ByteBuffer.allocate(entryPosition(total));
+        result.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(total);
+        for (int type = 1; type <= NUM_TYPES; type += 1) {
+            result.putInt(count == 0 ? 0
+                          : old.getInt(typeCountPosition(type)));
+        }
+        result.position(entryPosition(0));
+        int k = 0;
+        for (int j = 0; j < numAdded; j += 1) {
+            byte[] id = new byte[ID_BYTES];
+            added.get(j * ENTRY_BYTES, id);
+            int typePos = typeCountPosition(added.get(j * ENTRY_BYTES
+                                                      + ID_BYTES));
+            result.putInt(typePos, result.getInt(typePos) + 1);
+            while (k < count && compareId(old, entryPosition(k), id) < 0) {
+                result.put(old.slice(entryPosition(k), ENTRY_BYTES));
+                k += 1;
+            }
+            result.put(added.slice(j * ENTRY_BYTES, ENTRY_BYTES));
+        }
+        for (; k < count; k += 1) {
+            result.put(old.slice(entryPosition(k), ENTRY_BYTES));
+        }
+        int[] fanout = new int[256];
+        for (k = 0; k < total; k += 1) {
+            fanout[result.get(entryPosition(k)) & 0xff] += 1;
+        }
+        for (int b = 0, sum = 0; b < fanout.length; b += 1) {
+            sum += fanout[b];
+            result.putInt(INDEX_HEADER_BYTES + 4 * b, sum);
+        }
+        result.flip();
+        txn.write(indexFile, result);
+        synchronized (this) {
+            index = result;
+            count = total;
+        }
+    }
+
+    /** Return the delta against its suggested base with which REC, the
+     *  object with id ID, should be stored, or null if it should be
+     *  stored whole. */
+    private byte[] delta(String id, Record rec) {
+        if (rec.base == null || rec.type != BLOB
+            || rec.length < MIN_DELTA_BYTES || rec.length > MAX_DELTA_BYTES) {
+            return null;
+        }
+        int k = find(rec.base);
+        if (k < 0 || deltaDepth(k) >= MAX_DELTA_DEPTH) {
+            return null;
+        }
+        byte[] base = deltaBases.get(rec.base, this::load);
+        if (base.length > MAX_DELTA_BYTES) {
+            return null;
+        }
+        byte[] target = rec.contents != null ? rec.contents
+            : trace.readContents(rec.source);
+        if (target.length != rec.length
+            || rec.contents == null && !trace.sha1(target).equals(id)) {
+            throw new IllegalArgumentException("file changed while being "
+                                               + "stored: " + rec.source);
+        }
+        byte[] delta = Delta.compute(base, target);
+        return delta.length + ID_BYTES <= rec.length / 2 ? delta : null;
+    }
+
+    /** Return the number of deltas that must be applied to rebuild the
+     *  object of index entry #K. */
+    private int deltaDepth(int k) {
+        int depth = 0;
+        while (k >= 0 && isDelta(k)) {
+            depth += 1;
+            k = find(deltaBase(k));
+        }
+        return depth;
+    }
+
+    /** Append the deflated form of the first LENGTH bytes of CONTENTS, or
+     *  of SOURCE if CONTENTS is null, to OUT at its current position, and
+     *  return the length of the result.  The bytes read from SOURCE are
+     *  also fed to MD. */
+    private long deflate(byte[] contents, File source, long length,
+                         MessageDigest md, FileChannel out)
+        throws IOException {
+        long start = out.position();
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream zip =
+                new DeflaterOutputStream(Channels.newOutputStream(out),
+                                         deflater, DEFLATE_BUFFER_SIZE);
+            if (contents != null) {
+                zip.write(contents, 0, (int) length);
+            } else {
+                try (InputStream in = new DigestInputStream(
+                         new FileInputStream(source), md)) {
+                    copyPrefix(in, length, zip);
+                }
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            deflater.end();
+        }
+        return out.position() - start;
+    }
+
+    /** Copy exactly the first LENGTH bytes of IN to OUT. */
+    private static void copyPrefix(InputStream in, long length,
+                                   OutputStream out) throws IOException {
+        byte[] buf = new byte[DEFLATE_BUFFER_SIZE];
+        for (long done = 0; done < length; ) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, length - done));
+            if (n < 0) {
+                throw new IOException("file changed while being stored");
+            }
+            out.write(buf, 0, n);
+            done += n;
+        }
+    }
+
+    /** Return the contents of the payload of index entry #K, omitting its
+     *  first SKIP bytes and inflating the rest if they are deflated. */
+    private byte[] payload(int k, int skip) {
+        try (InputStream in = deflated(k)
+                 ? new InflaterInputStream(stored(k, skip))
+                 : stored(k, skip)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Return a stream of the stored payload of index entry #K, omitting
+     *  its first SKIP bytes. */
+    private InputStream stored(int k, long skip) {
+        return new PackInputStream(pack(), storedOffset(k) + skip,
+                                   storedLength(k) - skip);
+    }
+
+    /** Return true iff the payload of index entry #K is deflated. */
+    private boolean deflated(int k) {
+        return (index().get(entryPosition(k) + ID_BYTES) & DEFLATED) != 0;
+    }
+
+    /** Return true iff index entry #K is stored as a delta. */
+    private boolean isDelta(int k) {
+        return (index().get(entryPosition(k) + ID_BYTES) & DELTA) != 0;
+    }
+
+    /** Return the id of the base of the delta stored for index entry
+     *  #K. */
+    private String deltaBase(int k) {
+        byte[] raw;
+        try (InputStream in = new PackInputStream(pack(), storedOffset(k),
+                                                  ID_BYTES)) {
+            raw = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return bytesToUid(raw, 0, ID_BYTES);
+    }
+
+    /** Return the offset in the pack of the payload of index entry #K. */
+    private long storedOffset(int k) {
+        return index().getLong(entryPosition(k) + ID_BYTES + 1);
+    }
+
+    /** Return the stored length of the payload of index entry #K. */
+    private long storedLength(int k) {
+        return index().getLong(entryPosition(k) + ID_BYTES + 1 + 8);
+    }
+
+    /** Return the number of the index entry for ID, or -1 if there is
+     *  none. */
+    private int find(String id) {
+        byte[] target = uidToBytes(id);
+        int k = lowerBound(target);
+        return k < count && compareId(index(), entryPosition(k), target) == 0
+            ? k : -1;
+    }
+
+    /** Return the number of the first index entry whose id is not less
+     *  than the raw id TARGET, or count if there is none.  Only the
+     *  entries that share TARGET's first byte, as given by the fanout
+     *  table, are searched. */
+    private int lowerBound(byte[] target) {
+        ByteBuffer idx = index();
+        if (count == 0) {
+            return 0;
+        }
+        int b = target[0] & 0xff;
+        int lo = b == 0 ? 0 : idx.getInt(INDEX_HEADER_BYTES + 4 * (b - 1));
+        int hi = idx.getInt(INDEX_HEADER_BYTES + 4 * b);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareId(idx, entryPosition(mid), target) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return true iff PREFIX consists of at most UID_LENGTH lower-case
+     *  hexadecimal digits. */
+    private static boolean isHexPrefix(String prefix) {
+        if (prefix.length() > UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            char c = prefix.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Compare the raw id at position POS of BUF with ID as unsigned
+     *  byte strings. */
+    private static int compareId(ByteBuffer buf, int pos, byte[] id) {
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = Integer.compare(buf.get(pos + i) & 0xff, id[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the position in the index header of the number of entries
+     *  whose stored type byte is TAG. */
+    private static int typeCountPosition(int tag) {
+        return OLD_INDEX_HEADER_BYTES + 4 * ((tag & TYPE_MASK) - 1);
+    }
+
+    /** Return the position in the index file of entry #K. */
+    private static int entryPosition(int k) {
+        return INDEX_HEADER_BYTES + FANOUT_BYTES + k * ENTRY_BYTES;
+    }
+
+    /** Return the mapped index file, mapping it if needed.  An absent
+     *  index is treated as empty. */
+    private synchronized ByteBuffer index() {
+        if (index == null) {
+            finishRepack();
+            index = map(indexFile);
+            if (index.capacity() == 0) {
+                count = 0;
+            } else if (index.getInt(0) != INDEX_MAGIC
+                       || index.getInt(4) < OLD_INDEX_VERSION
+                       || index.getInt(4) > INDEX_VERSION) {
+                throw error("Corrupted object index.");
+            } else {
+                count = index.getInt(8);
+                if (index.getInt(4) != INDEX_VERSION) {
+                    index = upgradeIndex(index, count);
+                }
+            }
+        }
+        return index;
+    }
+
+    /** Return the index of OLD_INDEX_VERSION or UNCOUNTED_INDEX_VERSION
+     *  in OLD, which has COUNT entries, converted to the current form. */
+    private static ByteBuffer upgradeIndex(ByteBuffer old, int count) {
+        boolean oldEntries = old.getInt(4) == OLD_INDEX_VERSION;
+        int entrySize = oldEntries ? OLD_ENTRY_BYTES : ENTRY_BYTES;
+        ByteBuffer result = ByteBuffer.allocate(entryPosition(count));
+        result.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(count);
+        result.position(INDEX_HEADER_BYTES);
+        result.put(old.slice(OLD_INDEX_HEADER_BYTES, FANOUT_BYTES));
+        for (int k = 0; k < count; k += 1) {
+            int pos = OLD_INDEX_HEADER_BYTES + FANOUT_BYTES + k * entrySize;
+            if (oldEntries) {
+                result.put(old.slice(pos, ID_BYTES + 1 + 8))
+                    .putLong(old.getInt(pos + ID_BYTES + 1 + 8)
+                             & 0xffffffffL);
+            } else {
+                result.put(old.slice(pos, ENTRY_BYTES));
+            }
+            int typePos = typeCountPosition(old.get(pos + ID_BYTES));
+            result.putInt(typePos, result.getInt(typePos) + 1);
+        }
+        return result.flip();
+    }
+
+    /** If a repack was interrupted after its new pack replaced the old
+     *  one, but before its new index replaced the old index, replace the
+     *  index now, unless another reader of the repository does so
+     *  first. */
+    private void finishRepack() {
+        File newIndex = repacked(indexFile);
+        if (newIndex.isFile() && !repacked(packFile).isFile()) {
+            try {
+                Files.move(newIndex.toPath(), indexFile.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException excp) {
+                return;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+    }
+
+    /** Return the file holding the new version of FILE during a
+     *  repack. */
+    private static File repacked(File file) {
+        return new File(file.getPath() + ".new");
+    }
+
+    /** Return an index entry for the object with id ID whose stored type
+     *  byte is TAG and whose payload is the LENGTH bytes at OFFSET in the
+     *  pack. */
+    private static ByteBuffer entry(String id, int tag, long offset,
+                                    long length) {
+        ByteBuffer result = ByteBuffer.allocate(ENTRY_BYTES);
+        result.put(uidToBytes(id)).put((byte) tag).putLong(offset)
+            .putLong(length).flip();
+        return result;
+    }
+
+    /** Return the mapped segments of the pack file, mapping them if
+     *  needed. */
+    private synchronized ByteBuffer[] pack() {
+        if (pack == null) {
+            pack = mapSegments(packFile);
+        }
+        return pack;
+    }
+
+    /** Return read-only mappings of the consecutive SEGMENT_BYTES-byte
+     *  segments of FILE (the last of which may be shorter), or no
+     *  segments if FILE does not exist. */
+    private static ByteBuffer[] mapSegments(File file) {
+        if (!file.isFile()) {
+            return new ByteBuffer[0];
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer[] result =
+                new ByteBuffer[(int) ((size + SEGMENT_BYTES - 1)
+                                      / SEGMENT_BYTES)];
+            for (int i = 0; i < result.length; i += 1) {
+                long start = i * SEGMENT_BYTES;
+                result[i] = in.map(FileChannel.MapMode.READ_ONLY, start,
+                                   Math.min(SEGMENT_BYTES, size - start));
+            }
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Return a read-only mapping of all of FILE, or an empty buffer if
+     *  FILE does not exist. */
+    private static ByteBuffer map(File file) {
+        if (!file.isFile()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Write all of BUF to OUT at its current position. */
+    private static void writeFully(FileChannel out, ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /** Append the LENGTH bytes of IN, the open file SOURCE, starting at
+     *  OFFSET to OUT at its current position. */
+    private static void copy(FileChannel in, File source, long offset,
+                             long length, FileChannel out)
+        throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(offset + done, length - done, out);
+            if (n <= 0) {
+                throw new IOException("file changed while being stored: "
+                                      + source);
+            }
+            done += n;
+        }
+    }
+
+    /** An input stream over a range of bytes of a pack file mapped in
+     *  segments, as by mapSegments.  Reads only by absolute position, so
+     *  that several streams may share the segments. */
+    private static class PackInputStream extends InputStream {
+        /** The mapped segments of the pack. */
+        private final ByteBuffer[] segments;
+        /** Position in the pack of the next byte to be read. */
+        private long position;
+        /** Position in the pack just past the last byte to be read. */
+        private final long end;
+
+        /** A stream of the LENGTH bytes starting at position OFFSET of the
+         *  pack whose mapped segments are SEGMENTS. */
+        PackInputStream(ByteBuffer[] segments, long offset, long length) {
+            this.segments = segments;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() {
+            if (position >= end) {
+                return -1;
+            }
+            int b = segments[(int) (position / SEGMENT_BYTES)]
+                .get((int) (position % SEGMENT_BYTES)) & 0xff;
+            position += 1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int within = (int) (position % SEGMENT_BYTES);
+            int n = (int) Math.min(Math.min(len, end - position),
+                                   SEGMENT_BYTES - within);
+            segments[(int) (position / SEGMENT_BYTES)].get(within, b, off,
+                                                           n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+
+    /** An object waiting to be appended to the pack, either as its
+     *  contents or as a copy of its record in another pack. */
+    private static class Record {
+        /** The type tag of this object. */
+        private final byte type;
+        /** The contents of this object, or null if they are to be read
+         *  from source. */
+        private final byte[] contents;
+        /** The file holding the contents of this object, or the pack
+         *  holding its record if from is not null, or null. */
+        private final File source;
+        /** The length of the contents of this object, or of its stored
+         *  payload if from is not null. */
+        private final long length;
+        /** The id of a suggested delta base for this object, or null. */
+        private final String base;
+        /** The store from whose pack this object's record is copied, or
+         *  null. */
+        private final PackStore from;
+        /** The offset of the copied payload in source. */
+        private final long offset;
+        /** The stored type byte of the copied record. */
+        private final int tag;
+
+        /** A record of type TYPE holding LENGTH bytes, which are either
+         *  CONTENTS or, if that is null, the start of SOURCE, and which
+         *  may be stored as a delta against the object with id BASE, if
+         *  that is not null. */
+        Record(byte type, byte[] contents, File source, long length,
+               String base) {
+            this.type = type;
+            this.contents = contents;
+            this.source = source;
+            this.length = length;
+            this.base = base;
+            this.from = null;
+            this.offset = 0;
+            this.tag = type;
+        }
+
+        /** A record copied from index entry #K of FROM. */
+        Record(PackStore from, int k) {
+            int entry = entryPosition(k);
+            this.tag = from.index().get(entry + ID_BYTES) & 0xff;
+            this.type = (byte) (tag & TYPE_MASK);
+            this.contents = null;
+            this.source = from.packFile;
+            this.length = from.storedLength(k);
+            this.base = null;
+            this.from = from;
+            this.offset = from.storedOffset(k);
+        }
+    }
+}
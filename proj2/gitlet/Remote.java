@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** Another gitlet repository on the local file system, to and from which
+ *  commits are pushed and fetched.  A Remote gives access to the object
+ *  store, commit graph, message index, and branches of the repository
+ *  whose .gitlet directory it names, laid out as in Repository; its
+ *  working directory and staging area are never touched.  Changes are
+ *  written back, as one Transaction, by save.
+ *
+ *  Commits are transferred between two repositories (see transfer) by
+ *  walking back from the commit wanted until reaching commits the
+ *  receiving repository has, and then walking the snapshots of only the
+ *  new commits, skipping every tree and blob the receiver already has.
+ *  Since a repository that has a commit also has its whole history and
+ *  snapshot, the objects found are exactly the ones missing, and only
+ *  they are copied.
+ */
+class Remote {
+
+    /** The remote's .gitlet directory. */
+    private final File dir;
+    /** The files written to the remote. */
+    private final Transaction txn;
+    /** The blobs, trees, and commits of the remote. */
+    private final PackStore objects;
+    /** The trees of the remote, kept in objects. */
+    private final TreeStore trees;
+    /** The remote's commits, indexed by message. */
+    private final MessageIndex messages;
+    /** The ancestry of the remote's commits. */
+    private final CommitGraph graph;
+
+    /** The repository whose .gitlet directory is DIR, whose work is
+     *  recorded in TRACE.  Throws a GitletException if there is no such
+     *  directory. */
+    Remote(File dir, Trace trace) {
+        if (!dir.isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        this.dir = dir;
+        File config = file(Repository.CONFIG_FILE);
+        txn = new Transaction(file(Repository.TRANSACTION_DIR),
+                              Repository.syncWrites(config), trace);
+        objects = new PackStore(file(Repository.PACK_FILE),
+                                file(Repository.PACK_INDEX_FILE),
+                                Repository.compressionLevel(config), trace);
+        trees = new TreeStore(objects, trace);
+        messages = new MessageIndex(file(Repository.MESSAGE_INDEX_FILE));
+        graph = new CommitGraph(file(Repository.COMMIT_GRAPH_FILE),
+            id -> Commit.decode(objects.read(id)).parents(),
+            this::changedPaths);
+    }
+
+    /** Return a lock on the remote, shared iff SHARED, which must be held
+     *  while using it. */
+    RepositoryLock lock(boolean shared) {
+        return RepositoryLock.acquire(dir, shared);
+    }
+
+    /** Return the id of the head of the remote's branch BRANCH, or null
+     *  if it has no such branch. */
+    String branchHead(String branch) {
+        File ref = join(file(Repository.REFS_DIR), branch);
+        return txn.refExists(ref) ? txn.readRef(ref) : null;
+    }
+
+    /** Move (or create) the remote's branch BRANCH to the commit with id
+     *  ID. */
+    void setBranchHead(String branch, String id) {
+        txn.writeRef(join(file(Repository.REFS_DIR), branch), id);
+    }
+
+    /** Copy the commit with id HEAD in the repository of SOURCE, together
+     *  with all of its history and snapshots that this remote lacks, into
+     *  this remote, and return the number of objects copied. */
+    int fetchFrom(PackStore source, TreeStore sourceTrees, String head) {
+        return transfer(source, sourceTrees, objects, graph, messages, head);
+    }
+
+    /** Copy the commit with id HEAD in this remote, together with all of
+     *  its history and snapshots that the repository of TARGET lacks,
+     *  into TARGET, adding the new commits to TARGETGRAPH and
+     *  TARGETMESSAGES, and return the number of objects copied. */
+    int pushTo(PackStore target, CommitGraph targetGraph,
+               MessageIndex targetMessages, String head) {
+        return transfer(objects, trees, target, targetGraph, targetMessages,
+                        head);
+    }
+
+    /** Write back all changes to the remote. */
+    void save() {
+        objects.flush(txn);
+        messages.flush(txn);
+        graph.flush(txn);
+        txn.commit();
+    }
+
+    /** Return the paths changed by the remote's commit with id ID relative
+     *  to its first parent, or null if there are too many to filter. */
+    private List<String> changedPaths(String id) {
+        Commit commit = Commit.decode(objects.read(id));
+        String parent = commit.parent();
+        return trees.changedPaths(parent == null ? null
+                                  : Commit.decode(objects.read(parent)).tree(),
+                                  commit.tree(), BloomFilter.MAX_PATHS);
+    }
+
+    /** Return the file in the remote corresponding to LOCAL, a file in
+     *  the current repository's .gitlet directory. */
+    private File file(File local) {
+        return join(dir, local.getName());
+    }
+
+    /** Copy the commit with id HEAD from the repository whose objects and
+     *  trees are FROM and FROMTREES into the one whose objects, commit
+     *  graph, and message index are TO, TOGRAPH, and TOMESSAGES, along
+     *  with all of its history and snapshots that TO lacks.  Return the
+     *  number of objects copied. */
+    static int transfer(PackStore from, TreeStore fromTrees, PackStore to,
+                        CommitGraph toGraph, MessageIndex toMessages,
+                        String head) {
+        LinkedHashMap<String, Commit> commits = new LinkedHashMap<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(head);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (!to.contains(id) && !commits.containsKey(id)) {
+                Commit commit = Commit.decode(from.read(id));
+                commits.put(id, commit);
+                queue.addAll(commit.parents());
+            }
+        }
+        ArrayList<String> missing = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        for (Commit commit : commits.values()) {
+            missingObjects(fromTrees, commit.tree(), to, seen, missing);
+        }
+        missing.addAll(commits.keySet());
+        to.copyFrom(from, missing);
+        ArrayList<String> newest = new ArrayList<>(commits.keySet());
+        for (int i = newest.size() - 1; i >= 0; i -= 1) {
+            Commit commit = commits.get(newest.get(i));
+            toGraph.add(newest.get(i), commit.parents());
+            toMessages.add(newest.get(i), commit.message());
+        }
+        return missing.size();
+    }
+
+    /** Add to MISSING the ids of the tree with id TREE in TREES and of
+     *  all the trees and blobs under it that are not in TO or SEEN, adding
+     *  them to SEEN. */
+    private static void missingObjects(TreeStore trees, String tree,
+                                       PackStore to, HashSet<String> seen,
+                                       List<String> missing) {
+        if (to.contains(tree) || !seen.add(tree)) {
+            return;
+        }
+        missing.add(tree);
+        Tree contents = trees.read(tree);
+        for (String blob : contents.blobs().values()) {
+            if (!to.contains(blob) && seen.add(blob)) {
+                missing.add(blob);
+            }
+        }
+        for (String subtree : contents.trees().values()) {
+            missingObjects(trees, subtree, to, seen, missing);
+        }
+    }
+}
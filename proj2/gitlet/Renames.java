@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** The renames and copies between two versions of a set of files, each
+ *  given as a map from path to blob id.  Only exact renames and copies
+ *  are found: a file counts as renamed or copied only if its contents are
+ *  unchanged, which can be decided from the blob ids alone, without
+ *  reading any contents.  Each search is a hash join: the candidate
+ *  sources are entered in a hash table keyed by blob id, and then each
+ *  new path probes it once, so that the time taken is proportional to
+ *  the number of files rather than to its square.
+ */
+class Renames {
+
+    /** Return a map from each path of FROM that is absent from TO and
+     *  that was renamed to a path of TO absent from FROM to the path it
+     *  was renamed to.  A path is renamed to a new path with the same
+     *  blob.  When several old and new paths have the same blob, they are
+     *  paired in order of path, so that each old path has at most one new
+     *  one. */
+    static TreeMap<String, String> renames(SortedMap<String, String> from,
+                                           SortedMap<String, String> to) {
+        HashMap<String, ArrayDeque<String>> gone = new HashMap<>();
+        for (Map.Entry<String, String> e : from.entrySet()) {
+            if (!to.containsKey(e.getKey())) {
+                gone.computeIfAbsent(e.getValue(), k -> new ArrayDeque<>())
+                    .add(e.getKey());
+            }
+        }
+        TreeMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, String> e : to.entrySet()) {
+            ArrayDeque<String> sources = gone.get(e.getValue());
+            if (!from.containsKey(e.getKey())
+                && sources != null && !sources.isEmpty()) {
+                result.put(sources.remove(), e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** Return a map from each path of TO that is absent from FROM, that
+     *  is not a value of RENAMES, and that is a copy of a path of FROM
+     *  still present in TO to the (first such) path it copies.  RENAMES
+     *  is as returned by renames(FROM, TO). */
+    static TreeMap<String, String> copies(SortedMap<String, String> from,
+                                          SortedMap<String, String> to,
+                                          Map<String, String> renames) {
+        HashMap<String, String> kept = new HashMap<>();
+        for (Map.Entry<String, String> e : from.entrySet()) {
+            if (to.containsKey(e.getKey())) {
+                kept.putIfAbsent(e.getValue(), e.getKey());
+            }
+        }
+        HashSet<String> renamed = new HashSet<>(renames.values());
+        TreeMap<String, String> result = new TreeMap<>();
+        to.forEach((path, blobId) -> {
+            String source = kept.get(blobId);
+            if (!from.containsKey(path) && !renamed.contains(path)
+                && source != null) {
+                result.put(path, source);
+            }
+        });
+        return result;
+    }
+}
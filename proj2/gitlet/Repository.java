@@ -1,29 +1,1006 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import static gitlet.Utils.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
 
-// TODO: any imports you need here
+import static gitlet.Utils.*;
 
 /** Represents a gitlet repository.
- *  TODO: It's a good idea to give a description here of what else this Class
- *  does at a high level.
+ *  All persistent state lives in the .gitlet directory of the current
+ *  working directory:
  *
- *  @author TODO
+ *      .gitlet/HEAD          name of the current branch
+ *      .gitlet/refs/NAME     id of the head commit of branch NAME
+ *      .gitlet/index         the encoded StagingArea
+ *      .gitlet/stat-cache    the encoded StatCache of working files
+ *      .gitlet/objects.pack  all blobs and commits (see PackStore)
+ *      .gitlet/objects.idx   sorted index of objects.pack
+ *      .gitlet/commit-graph  parents, generations, and changed-path
+ *                            filters of commits (see CommitGraph)
+ *      .gitlet/lock          locked while a command runs
+ *                            (see RepositoryLock)
+ *
+ *  Each command of gitlet corresponds to one public method.  State that
+ *  a command changes is buffered in this object and written back by
+ *  save, so that a command that fails with a GitletException leaves the
+ *  repository untouched.
  */
 public class Repository {
-    /**
-     * TODO: add instance variables here.
-     *
-     * List all instance variables of the Repository class here with a useful
-     * comment above them describing what that variable represents and how that
-     * variable is used. We've provided two examples for you.
-     */
 
     /** The current working directory. */
     public static final File CWD = new File(System.getProperty("user.dir"));
     /** The .gitlet directory. */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
+    /** The file naming the current branch. */
+    static final File HEAD_FILE = join(GITLET_DIR, "HEAD");
+    /** The directory of branch heads. */
+    static final File REFS_DIR = join(GITLET_DIR, "refs");
+    /** The file holding the staging area. */
+    static final File INDEX_FILE = join(GITLET_DIR, "index");
+    /** The file holding the stat cache of working files. */
+    static final File STAT_CACHE_FILE = join(GITLET_DIR, "stat-cache");
+    /** The pack file of the object store. */
+    static final File PACK_FILE = join(GITLET_DIR, "objects.pack");
+    /** The index of PACK_FILE. */
+    static final File PACK_INDEX_FILE = join(GITLET_DIR, "objects.idx");
+    /** The file holding the commit graph. */
+    static final File COMMIT_GRAPH_FILE = join(GITLET_DIR, "commit-graph");
+    /** The index of commit messages. */
+    static final File MESSAGE_INDEX_FILE = join(GITLET_DIR, "message-index");
+    /** The repository's settings, in java.util.Properties format. */
+    static final File CONFIG_FILE = join(GITLET_DIR, "config");
+    /** Directory holding, for each remote, a file named for the remote
+     *  that contains the path of its .gitlet directory. */
+    static final File REMOTES_DIR = join(GITLET_DIR, "remotes");
+    /** The setting giving the deflate level (0-9, or -1 for the zlib
+     *  default) used to store new blobs; 0 stores them uncompressed. */
+    static final String COMPRESSION_SETTING = "core.compression";
+    /** The setting in CONFIG_FILE that, if false, stops gitlet from
+     *  forcing the files written by each command to disk. */
+    static final String FSYNC_SETTING = "core.fsync";
+    /** The file locked by each command (see RepositoryLock). */
+    static final File LOCK_FILE = join(GITLET_DIR, "lock");
+    /** The setting giving the longest time, in ms, that a command waits
+     *  for another command to release the repository. */
+    static final String LOCK_TIMEOUT_SETTING = "core.lockTimeout";
+    /** The lock timeout used if there is no LOCK_TIMEOUT_SETTING. */
+    static final long DEFAULT_LOCK_TIMEOUT = 10000;
+    /** Scratch directory for files being replaced by a command. */
+    static final File TRANSACTION_DIR = join(GITLET_DIR, "transaction");
+    /** Scratch directory for files being checked out. */
+    static final File SCRATCH_DIR = join(GITLET_DIR, "checkout");
+    /** The largest number of decoded commits kept in memory. */
+    static final int COMMIT_CACHE_SIZE = 1024;
+    /** The environment variable that, if set, turns on the debugging
+     *  statistics printed by reportDebugStats. */
+    static final String DEBUG_VARIABLE = "GITLET_DEBUG";
+    /** The name of the branch created by init. */
+    static final String DEFAULT_BRANCH = "main";
+    /** Error message for commands that would clobber untracked files. */
+    static final String UNTRACKED_IN_THE_WAY =
+        "There is an untracked file in the way; delete it, "
+        + "or add and commit it first.";
+
+    /** Records the work of each command, if tracing is on. */
+    private final Trace trace =
+        new Trace(System.getenv(Trace.TRACE_VARIABLE));
+    /** The files written by the current command. */
+    private final Transaction txn =
+        new Transaction(TRANSACTION_DIR, syncWrites(CONFIG_FILE), trace);
+    /** The blobs and commits of this repository. */
+    private final PackStore objects =
+        new PackStore(PACK_FILE, PACK_INDEX_FILE,
+                      compressionLevel(CONFIG_FILE), trace);
+    /** The trees of the snapshots of this repository, kept in objects. */
+    private final TreeStore trees = new TreeStore(objects, trace);
+    /** The commits of this repository, indexed by message. */
+    private final MessageIndex messages =
+        new MessageIndex(MESSAGE_INDEX_FILE);
+    /** The ancestry of the commits of this repository. */
+    private final CommitGraph graph =
+        new CommitGraph(COMMIT_GRAPH_FILE, id -> readCommit(id).parents(),
+                        this::changedPaths);
+    /** Recently decoded commits, by id. */
+    private final LruCache<String, Commit> commits =
+        new LruCache<>(COMMIT_CACHE_SIZE);
+    /** True iff debugging statistics are to be printed. */
+    private final boolean debug = System.getenv(DEBUG_VARIABLE) != null;
+    /** The staging area, or null if not yet read. */
+    private StagingArea stage;
+    /** The stat cache of working files, or null if not yet read. */
+    private StatCache statCache;
+
+    /** Throw a GitletException unless the current directory contains a
+     *  gitlet repository. */
+    void checkInitialized() {
+        if (!GITLET_DIR.isDirectory()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+    }
+
+    /** Return the deflate level for new blobs given by the
+     *  COMPRESSION_SETTING of CONFIG_FILE, or the zlib default if there is
+     *  none. */
+    static int compressionLevel(File configFile) {
+        String value = config(configFile).getProperty(COMPRESSION_SETTING);
+        if (value == null) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        try {
+            return Integer.parseInt(value.strip());
+        } catch (NumberFormatException excp) {
+            throw error("Invalid compression level: %s", value);
+        }
+    }
+
+    /** Return false iff FSYNC_SETTING of the settings file CONFIGFILE is
+     *  false. */
+    static boolean syncWrites(File configFile) {
+        String value =
+            config(configFile).getProperty(FSYNC_SETTING, "true").strip();
+        if (!value.equals("true") && !value.equals("false")) {
+            throw error("Invalid fsync setting: %s", value);
+        }
+        return value.equals("true");
+    }
+
+    /** Return the time in ms to wait for the repository lock given by the
+     *  LOCK_TIMEOUT_SETTING of CONFIGFILE, or DEFAULT_LOCK_TIMEOUT if there
+     *  is none. */
+    static long lockTimeout(File configFile) {
+        String value = config(configFile).getProperty(LOCK_TIMEOUT_SETTING);
+        if (value == null) {
+            return DEFAULT_LOCK_TIMEOUT;
+        }
+        long result;
+        try {
+            result = Long.parseLong(value.strip());
+        } catch (NumberFormatException excp) {
+            result = -1;
+        }
+        if (result < 0) {
+            throw error("Invalid lock timeout: %s", value);
+        }
+        return result;
+    }
+
+    /** Return the settings in CONFIGFILE, which are empty if there is no
+     *  such file. */
+    private static Properties config(File configFile) {
+        Properties result = new Properties();
+        if (!configFile.isFile()) {
+            return result;
+        }
+        try (Reader in = Files.newBufferedReader(configFile.toPath(),
+                                                 StandardCharsets.UTF_8)) {
+            result.load(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return result;
+    }
+
+    /** Write back all state changed by the current command, as one
+     *  Transaction. */
+    void save() {
+        objects.flush(txn);
+        messages.flush(txn);
+        graph.flush(txn);
+        if (stage != null && stage.changed()) {
+            txn.writeLast(INDEX_FILE, stage.encode());
+        }
+        if (statCache != null && statCache.changed()) {
+            txn.write(STAT_CACHE_FILE, statCache.encode());
+        }
+        txn.commit();
+    }
+
+    /** If debugging is on, print the statistics gathered since the last
+     *  call to the standard error, and reset them. */
+    void reportDebugStats() {
+        if (debug) {
+            System.err.printf("commit cache: %d hits, %d misses, %d cached%n",
+                              commits.hits(), commits.misses(),
+                              commits.size());
+            commits.resetCounts();
+        }
+    }
+
+    /** If tracing is on, report the work done by the command named
+     *  COMMAND, which has just finished (see Trace). */
+    void reportTrace(String command) {
+        trace.report(command);
+    }
+
+    /* COMMANDS */
+
+    /** Create a new repository with a single initial commit on branch
+     *  DEFAULT_BRANCH. */
+    public void init() {
+        if (GITLET_DIR.exists()) {
+            throw error("A Gitlet version-control system already exists "
+                        + "in the current directory.");
+        }
+        GITLET_DIR.mkdir();
+        REFS_DIR.mkdir();
+        Commit initial =
+            new Commit("initial commit", new Date(0), List.of(),
+                       trees.write(new Tree(Map.of(), Map.of())));
+        txn.writeRef(join(REFS_DIR, DEFAULT_BRANCH), writeCommit(initial));
+        txn.writeRef(HEAD_FILE, DEFAULT_BRANCH);
+        stage = new StagingArea();
+        txn.writeLast(INDEX_FILE, stage.encode());
+    }
+
+    /** Stage the current contents of working file NAME for addition. */
+    public void add(String name) {
+        File file = join(CWD, name);
+        if (!file.isFile()) {
+            throw error("File does not exist.");
+        }
+        String blobId = workingBlobId(name);
+        String headBlobId = trees.blob(headCommit().tree(), name);
+        if (blobId.equals(headBlobId)) {
+            stage().unstage(name);
+        } else {
+            objects.write(blobId, PackStore.BLOB, file, headBlobId);
+            stage().add(name, blobId);
+        }
+    }
+
+    /** Make a new commit on the current branch with message MESSAGE from
+     *  the head commit and the staging area. */
+    public void commit(String message) {
+        commit(message, null);
+    }
+
+    /** Stop tracking NAME, removing it from the working directory if the
+     *  head commit tracks it. */
+    public void rm(String name) {
+        boolean tracked = trees.blob(headCommit().tree(), name) != null;
+        if (!tracked && !stage().added().containsKey(name)) {
+            throw error("No reason to remove the file.");
+        }
+        if (tracked) {
+            stage().remove(name);
+            restrictedDelete(CWD, name);
+        } else {
+            stage().unstage(name);
+        }
+    }
+
+    /** Print the history of the current branch, following first
+     *  parents. */
+    public void log() {
+        LogPrinter out = new LogPrinter();
+        try {
+            for (String id = headId(); id != null; ) {
+                Commit commit = readCommit(id);
+                out.print(id, commit);
+                id = commit.parent();
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /** Print the commits in the history of the current branch, following
+     *  first parents, in which the file PATH differs from the first
+     *  parent (or, for the initial commit, exists).  Only commits whose
+     *  changed-path filters allow that they may have changed PATH are
+     *  read: since all commits on the chain between two such commits
+     *  leave PATH alone, the first parent of each holds the same version
+     *  of PATH as the next one. */
+    public void log(String path) {
+        List<String> candidates = graph.mayHaveChanged(headId(), path);
+        LogPrinter out = new LogPrinter();
+        try {
+            String blob = null;
+            for (int i = 0; i < candidates.size(); i += 1) {
+                Commit commit = readCommit(candidates.get(i));
+                if (i == 0) {
+                    blob = trees.blob(commit.tree(), path);
+                }
+                String parentBlob = i + 1 == candidates.size() ? null
+                    : trees.blob(readCommit(candidates.get(i + 1)).tree(),
+                                 path);
+                if (!Objects.equals(blob, parentBlob)) {
+                    out.print(candidates.get(i), commit);
+                }
+                blob = parentBlob;
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /** Print every commit ever made, in no particular order. */
+    public void globalLog() {
+        LogPrinter out = new LogPrinter();
+        try {
+            for (String id : objects.ids(PackStore.COMMIT)) {
+                out.print(id, Commit.decode(objects.read(id)));
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /** Print the ids of all commits whose message is MESSAGE.  Only the
+     *  commits that the message index offers as candidates are read,
+     *  unless the index must first be rebuilt. */
+    public void find(String message) {
+        int numCommits = objects.count(PackStore.COMMIT);
+        List<String> candidates = messages.candidates(message, numCommits);
+        if (candidates == null) {
+            TreeMap<String, String> all = new TreeMap<>();
+            for (String id : objects.ids(PackStore.COMMIT)) {
+                all.put(id, readCommit(id).message());
+            }
+            messages.rebuild(all);
+            candidates = messages.candidates(message, numCommits);
+        }
+        candidates.sort(null);
+        boolean found = false;
+        for (String id : candidates) {
+            if (readCommit(id).message().equals(message)) {
+                System.out.println(id);
+                found = true;
+            }
+        }
+        if (!found) {
+            throw error("Found no commit with that message.");
+        }
+    }
+
+    /** Print the branches, the staging area, and the state of the working
+     *  directory relative to them, followed by any renames and copies of
+     *  files made by the staging area (and renames made in the working
+     *  directory by moving files), if there are any. */
+    public void status() {
+        String current = currentBranch();
+        System.out.println("=== Branches ===");
+        for (String branch : branches()) {
+            System.out.println(branch.equals(current) ? "*" + branch : branch);
+        }
+        System.out.println();
+        System.out.println("=== Staged Files ===");
+        stage().added().keySet().forEach(System.out::println);
+        System.out.println();
+        System.out.println("=== Removed Files ===");
+        stage().removed().forEach(System.out::println);
+        System.out.println();
+
+        TreeMap<String, String> head = trees.files(headCommit().tree());
+        Map<String, String> added = stage().added();
+        Set<String> removed = stage().removed();
+        TreeSet<String> names = new TreeSet<>(trace.plainFilenamesUnder(CWD));
+        names.addAll(head.keySet());
+        names.addAll(added.keySet());
+        TreeMap<String, String> modified = new TreeMap<>();
+        TreeMap<String, File> untracked = new TreeMap<>();
+        TreeMap<String, File> tracked = new TreeMap<>();
+        TreeMap<String, String> deleted = new TreeMap<>();
+        for (String name : names) {
+            File file = join(CWD, name);
+            String expected =
+                added.containsKey(name) ? added.get(name) : head.get(name);
+            if (!file.isFile()) {
+                if (added.containsKey(name)
+                    || (head.containsKey(name) && !removed.contains(name))) {
+                    modified.put(name, "deleted");
+                    deleted.put(name, expected);
+                }
+            } else if (expected == null || removed.contains(name)) {
+                untracked.put(name, file);
+            } else {
+                tracked.put(name, file);
+            }
+        }
+        statCache().blobIds(tracked).forEach((name, blobId) -> {
+            String expected =
+                added.containsKey(name) ? added.get(name) : head.get(name);
+            if (!expected.equals(blobId)) {
+                modified.put(name, "modified");
+            }
+        });
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        modified.forEach((name, how) -> System.out.printf("%s (%s)%n",
+                                                           name, how));
+        System.out.println();
+        System.out.println("=== Untracked Files ===");
+        untracked.keySet().forEach(System.out::println);
+        System.out.println();
+
+        TreeMap<String, String> staged = new TreeMap<>(head);
+        staged.keySet().removeAll(removed);
+        staged.putAll(added);
+        TreeMap<String, String> renames = Renames.renames(head, staged);
+        TreeMap<String, String> renamed = new TreeMap<>();
+        renames.forEach((from, to) ->
+            renamed.put(to, from + " -> " + to + " (renamed)"));
+        Renames.copies(head, staged, renames).forEach((to, from) ->
+            renamed.put(to, from + " -> " + to + " (copied)"));
+        statCache().moves(deleted, untracked).forEach((from, to) ->
+            renamed.put(to, from + " -> " + to + " (renamed, not staged)"));
+        if (!renamed.isEmpty()) {
+            System.out.println("=== Renamed and Copied Files ===");
+            renamed.values().forEach(System.out::println);
+            System.out.println();
+        }
+    }
+
+    /** Restore working file NAME to its contents in the commit whose
+     *  (possibly abbreviated) id is COMMITID. */
+    public void checkoutFile(String commitId, String name) {
+        String blobId =
+            trees.blob(readCommit(resolveCommitId(commitId)).tree(), name);
+        if (blobId == null) {
+            throw error("File does not exist in that commit.");
+        }
+        writeWorkingFile(name, blobId);
+    }
+
+    /** Restore working file NAME to its contents in the head commit. */
+    public void checkoutFile(String name) {
+        checkoutFile(headId(), name);
+    }
+
+    /** Make BRANCH the current branch, replacing the working files with
+     *  those of its head commit. */
+    public void checkoutBranch(String branch) {
+        File ref = join(REFS_DIR, branch);
+        if (!txn.refExists(ref)) {
+            throw error("No such branch exists.");
+        }
+        if (branch.equals(currentBranch())) {
+            throw error("No need to checkout the current branch.");
+        }
+        checkoutCommit(txn.readRef(ref));
+        txn.writeRef(HEAD_FILE, branch);
+    }
+
+    /** Create a new branch named NAME at the head commit. */
+    public void branch(String name) {
+        File ref = join(REFS_DIR, name);
+        if (txn.refExists(ref)) {
+            throw error("A branch with that name already exists.");
+        }
+        txn.writeRef(ref, headId());
+    }
+
+    /** Delete the branch named NAME, leaving its commits alone. */
+    public void rmBranch(String name) {
+        File ref = join(REFS_DIR, name);
+        if (!txn.refExists(ref)) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (name.equals(currentBranch())) {
+            throw error("Cannot remove the current branch.");
+        }
+        txn.deleteRef(ref);
+    }
+
+    /** Remove every object that is not reachable from a branch or the
+     *  staging area, and rewrite the pack with the rest in the order of
+     *  their first use: the commits, most recent first, and then the
+     *  trees and blobs of each commit's snapshot that earlier snapshots
+     *  did not share.  Print the number of objects and bytes reclaimed. */
+    public void gc() {
+        long oldBytes = PACK_FILE.length() + PACK_INDEX_FILE.length();
+        int oldCount = objects.size();
+        LinkedHashMap<String, Commit> reachable = new LinkedHashMap<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        for (String branch : branches()) {
+            queue.add(txn.readRef(join(REFS_DIR, branch)));
+        }
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (!reachable.containsKey(id)) {
+                Commit commit = readCommit(id);
+                reachable.put(id, commit);
+                queue.addAll(commit.parents());
+            }
+        }
+        ArrayList<String> live = new ArrayList<>(reachable.keySet());
+        HashSet<String> seen = new HashSet<>(live);
+        for (Commit commit : reachable.values()) {
+            addTree(commit.tree(), seen, live);
+        }
+        for (String blobId : stage().added().values()) {
+            if (seen.add(blobId)) {
+                live.add(blobId);
+            }
+        }
+
+        graph.clear();
+        ArrayList<String> ids = new ArrayList<>(reachable.keySet());
+        for (int i = ids.size() - 1; i >= 0; i -= 1) {
+            graph.add(ids.get(i), reachable.get(ids.get(i)).parents());
+        }
+        TreeMap<String, String> messageMap = new TreeMap<>();
+        reachable.forEach((id, commit) ->
+            messageMap.put(id, commit.message()));
+        messages.rebuild(messageMap);
+        long newBytes = objects.repack(live, txn);
+        commits.clear();
+        System.out.printf("Removed %d unreachable objects, reclaiming %d "
+                          + "bytes.%n", oldCount - live.size(),
+                          oldBytes - newBytes);
+    }
+
+    /** Add to LIVE the ids of the tree with id TREE and of the trees and
+     *  blobs under it that are not in SEEN, adding them to SEEN. */
+    private void addTree(String tree, Set<String> seen, List<String> live) {
+        if (!seen.add(tree)) {
+            return;
+        }
+        live.add(tree);
+        Tree contents = trees.read(tree);
+        for (String blobId : contents.blobs().values()) {
+            if (seen.add(blobId)) {
+                live.add(blobId);
+            }
+        }
+        for (String subtree : contents.trees().values()) {
+            addTree(subtree, seen, live);
+        }
+    }
+
+    /** Record the repository whose .gitlet directory is DIR, a path whose
+     *  components are separated by '/', as the remote named NAME. */
+    public void addRemote(String name, String dir) {
+        File remote = join(REMOTES_DIR, name);
+        if (txn.refExists(remote)) {
+            throw error("A remote with that name already exists.");
+        }
+        txn.writeRef(remote, dir.replace("/", File.separator));
+    }
+
+    /** Forget the remote named NAME. */
+    public void rmRemote(String name) {
+        File remote = join(REMOTES_DIR, name);
+        if (!txn.refExists(remote)) {
+            throw error("A remote with that name does not exist.");
+        }
+        txn.deleteRef(remote);
+    }
+
+    /** Copy the head commit, with whatever of its history the remote named
+     *  REMOTENAME lacks, to that remote, and move (or create) its branch
+     *  BRANCH to it.  The remote's branch must not have moved on from
+     *  our head. */
+    public void push(String remoteName, String branch) {
+        Remote remote = remote(remoteName);
+        RepositoryLock lock = remote.lock(false);
+        try {
+            String remoteHead = remote.branchHead(branch);
+            String headId = headId();
+            if (remoteHead != null
+                && !(objects.contains(remoteHead)
+                     && graph.isAncestor(remoteHead, headId))) {
+                throw error("Please pull down remote changes before "
+                            + "pushing.");
+            }
+            remote.fetchFrom(objects, trees, headId);
+            remote.setBranchHead(branch, headId);
+            remote.save();
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
+        }
+    }
+
+    /** Copy the head of branch BRANCH of the remote named REMOTENAME, with
+     *  whatever of its history we lack, and point the branch
+     *  REMOTENAME/BRANCH at it. */
+    public void fetch(String remoteName, String branch) {
+        Remote remote = remote(remoteName);
+        RepositoryLock lock = remote.lock(true);
+        try {
+            String remoteHead = remote.branchHead(branch);
+            if (remoteHead == null) {
+                throw error("That remote does not have that branch.");
+            }
+            remote.pushTo(objects, graph, messages, remoteHead);
+            // The copied objects are read from the remote's pack when they
+            // are flushed, which must happen before a gc there can replace
+            // that pack.
+            objects.flush(txn);
+            txn.writeRef(join(REFS_DIR, remoteName, branch), remoteHead);
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
+        }
+    }
+
+    /** Fetch branch BRANCH of the remote named REMOTENAME and merge it into
+     *  the current branch. */
+    public void pull(String remoteName, String branch) {
+        fetch(remoteName, branch);
+        merge(remoteName + "/" + branch);
+    }
+
+    /** Check out all files of the commit whose (possibly abbreviated) id
+     *  is COMMITID and move the current branch to it. */
+    public void reset(String commitId) {
+        String id = resolveCommitId(commitId);
+        checkoutCommit(id);
+        setHeadId(id);
+    }
+
+    /** Merge the head of BRANCH into the current branch.  A file changed
+     *  differently in both branches is merged line by line (see
+     *  LineMerge), and is only in conflict where the changes overlap.  A
+     *  file that one branch renamed (see Renames) and the other kept under
+     *  its old name is merged under its new name, so that the other
+     *  branch's changes to it follow the rename. */
+    public void merge(String branch) {
+        if (!stage().isEmpty()) {
+            throw error("You have uncommitted changes.");
+        }
+        File ref = join(REFS_DIR, branch);
+        if (!txn.refExists(ref)) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (branch.equals(currentBranch())) {
+            throw error("Cannot merge a branch with itself.");
+        }
+        String headId = headId();
+        String givenId = txn.readRef(ref);
+        if (graph.isAncestor(givenId, headId)) {
+            message("Given branch is an ancestor of the current branch.");
+            return;
+        }
+        if (graph.isAncestor(headId, givenId)) {
+            checkoutCommit(givenId);
+            setHeadId(givenId);
+            message("Current branch fast-forwarded.");
+            return;
+        }
+        String splitId = graph.mergeBase(headId, givenId);
+
+        TreeMap<String, String> current = trees.files(readCommit(headId)
+                                                      .tree()),
+            head = new TreeMap<>(current),
+            given = trees.files(readCommit(givenId).tree()),
+            split = trees.files(readCommit(splitId).tree());
+        TreeMap<String, String> headRenames = Renames.renames(split, head),
+            givenRenames = Renames.renames(split, given);
+        followRenames(headRenames, given, split);
+        followRenames(givenRenames, head, split);
+        TreeSet<String> names = new TreeSet<>(split.keySet());
+        names.addAll(head.keySet());
+        names.addAll(given.keySet());
+        names.addAll(current.keySet());
+        TreeMap<String, String> take = new TreeMap<>();
+        TreeSet<String> conflicts = new TreeSet<>();
+        for (String name : names) {
+            String s = split.get(name),
+                h = head.get(name),
+                g = given.get(name);
+            if (Objects.equals(h, g) || Objects.equals(s, g)) {
+                g = h;
+            } else if (!Objects.equals(s, h)) {
+                conflicts.add(name);
+                continue;
+            }
+            if (!Objects.equals(g, current.get(name))) {
+                take.put(name, g);
+            }
+        }
+        TreeSet<String> changed = new TreeSet<>(take.keySet());
+        changed.addAll(conflicts);
+        checkUntracked(current, changed);
+
+        // Delete first, so that a file may take the place of a directory
+        // whose files are deleted.
+        take.forEach((name, blobId) -> {
+            if (blobId == null) {
+                stage().remove(name);
+                restrictedDelete(CWD, name);
+            }
+        });
+        take.forEach((name, blobId) -> {
+            if (blobId != null) {
+                writeWorkingFile(name, blobId);
+                stage().add(name, blobId);
+            }
+        });
+        boolean conflicted = false;
+        for (String name : conflicts) {
+            String h = head.get(name), g = given.get(name);
+            byte[] contents;
+            if (h == null || g == null) {
+                contents = conflictContents(h, g);
+                conflicted = true;
+            } else {
+                String s = split.get(name);
+                LineMerge lines =
+                    new LineMerge(s == null ? new byte[0] : objects.read(s),
+                                  objects.read(h), objects.read(g));
+                contents = lines.result();
+                conflicted |= lines.hasConflicts();
+            }
+            String blobId = trace.sha1(contents);
+            objects.write(blobId, PackStore.BLOB, contents);
+            writeWorkingFile(name, blobId);
+            stage().add(name, blobId);
+        }
+        commit(String.format("Merged %s into %s.", branch, currentBranch()),
+               givenId);
+        if (conflicted) {
+            message("Encountered a merge conflict.");
+        }
+    }
+
+    /* HELPERS */
+
+    /** Make a new commit on the current branch with message MESSAGE from
+     *  the head commit and the staging area.  If SECONDPARENT is non-null,
+     *  it is the id of the second parent of this (merge) commit. */
+    private void commit(String message, String secondParent) {
+        if (stage().isEmpty()) {
+            throw error("No changes added to the commit.");
+        }
+        if (message.isEmpty()) {
+            throw error("Please enter a commit message.");
+        }
+        String headId = headId();
+        TreeMap<String, String> changes = new TreeMap<>(stage().added());
+        stage().removed().forEach(name -> changes.put(name, null));
+        String tree = trees.update(readCommit(headId).tree(), changes);
+        List<String> parents = secondParent == null
+            ? List.of(headId) : List.of(headId, secondParent);
+        setHeadId(writeCommit(new Commit(message, new Date(), parents,
+                                         tree)));
+        stage().clear();
+    }
+
+    /** Replace the working files with those tracked by the commit with id
+     *  ID and clear the staging area.  Files whose contents already match
+     *  are left alone. */
+    private void checkoutCommit(String id) {
+        Map<String, String> head = trees.files(headCommit().tree()),
+            target = trees.files(readCommit(id).tree());
+        checkUntracked(head, new TreeSet<>(target.keySet()));
+        CheckoutPlan plan = new CheckoutPlan(CWD, SCRATCH_DIR, objects);
+        for (String name : head.keySet()) {
+            if (!target.containsKey(name)) {
+                plan.delete(name);
+            }
+        }
+        for (Map.Entry<String, String> e : target.entrySet()) {
+            String name = e.getKey();
+            if (!join(CWD, name).isFile()
+                || !workingBlobId(name).equals(e.getValue())) {
+                plan.write(name, e.getValue());
+            }
+        }
+        plan.execute();
+        plan.writes().forEach((name, blobId) ->
+            statCache().record(name, join(CWD, name), blobId));
+        stage().clear();
+    }
+
+    /** Throw a GitletException if writing or deleting the working files
+     *  named in CHANGED would clobber an untracked file: one anywhere in
+     *  the working tree whose name is not in TRACKED.  Besides a file
+     *  with a changed name, these include a file where a directory of a
+     *  changed file must go and a file in a directory where a changed
+     *  file must go. */
+    private void checkUntracked(Map<String, String> tracked,
+                                NavigableSet<String> changed) {
+        for (String name : trace.plainFilenamesUnder(CWD)) {
+            if (tracked.containsKey(name)) {
+                continue;
+            }
+            String below = changed.ceiling(name + "/");
+            boolean inTheWay = changed.contains(name)
+                || (below != null && below.startsWith(name + "/"));
+            for (int i = name.indexOf('/'); !inTheWay && i >= 0;
+                 i = name.indexOf('/', i + 1)) {
+                inTheWay = changed.contains(name.substring(0, i));
+            }
+            if (inTheWay) {
+                throw error(UNTRACKED_IN_THE_WAY);
+            }
+        }
+    }
+
+    /** Carry the RENAMES made by one side of a merge over to the versions
+     *  of the files in the merge base, SPLIT, and on the other side,
+     *  OTHER, by moving the entries of each renamed path in them to its
+     *  new path.  RENAMES is as returned by Renames.renames(SPLIT, side).
+     *  A rename is carried only if OTHER still has the old path and
+     *  neither OTHER nor SPLIT has the new one, so that it does not clash
+     *  with a file or rename of OTHER's own. */
+    private static void followRenames(Map<String, String> renames,
+                                      Map<String, String> other,
+                                      Map<String, String> split) {
+        renames.forEach((from, to) -> {
+            if (other.containsKey(from) && !other.containsKey(to)
+                && !split.containsKey(to)) {
+                other.put(to, other.remove(from));
+                split.put(to, split.remove(from));
+            }
+        });
+    }
+
+    /** Return the contents of a conflicted file whose version in the head
+     *  commit is the blob HEADBLOB and whose version in the given branch is
+     *  the blob GIVENBLOB, with the whole of each version marked as in
+     *  conflict.  Either may be null for an absent file. */
+    private byte[] conflictContents(String headBlob, String givenBlob) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.writeBytes("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+        if (headBlob != null) {
+            result.writeBytes(objects.read(headBlob));
+        }
+        result.writeBytes("=======\n".getBytes(StandardCharsets.UTF_8));
+        if (givenBlob != null) {
+            result.writeBytes(objects.read(givenBlob));
+        }
+        result.writeBytes(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        return result.toByteArray();
+    }
+
+    /** Return the full id of the commit whose id starts with PREFIX.
+     *  Throws a GitletException if there is no such commit, or if PREFIX
+     *  is ambiguous. */
+    private String resolveCommitId(String prefix) {
+        if (prefix.length() == UID_LENGTH) {
+            if (objects.type(prefix) == PackStore.COMMIT) {
+                return prefix;
+            }
+        } else {
+            List<String> matches =
+                objects.idsWithPrefix(prefix, PackStore.COMMIT, 2);
+            if (matches.size() == 1) {
+                return matches.get(0);
+            }
+        }
+        throw error("No commit with that id exists.");
+    }
+
+    /** Return the blob id of the current contents of working file NAME,
+     *  which must exist. */
+    private String workingBlobId(String name) {
+        return statCache().blobId(name, join(CWD, name));
+    }
+
+    /** Replace the contents of working file NAME with those of the blob
+     *  with id BLOBID, creating its directory if need be. */
+    private void writeWorkingFile(String name, String blobId) {
+        File file = join(CWD, name);
+        file.getParentFile().mkdirs();
+        objects.copy(blobId, file);
+        statCache().record(name, file, blobId);
+    }
+
+    /** Store COMMIT and return its id. */
+    private String writeCommit(Commit commit) {
+        byte[] data = commit.encode();
+        String id = trace.sha1(data);
+        objects.write(id, PackStore.COMMIT, data);
+        messages.add(id, commit.message());
+        graph.add(id, commit.parents());
+        return id;
+    }
+
+    /** Return the commit with id ID.  Commits are immutable, so the same
+     *  decoded object is returned to every caller while it stays in the
+     *  commit cache. */
+    private Commit readCommit(String id) {
+        return commits.get(id, k -> {
+            byte[] data = objects.read(k);
+            long start = trace.start();
+            Commit result = Commit.decode(data);
+            trace.end(Trace.DESERIALIZE, start, data.length);
+            return result;
+        });
+    }
+
+    /** Return the paths changed by the commit with id ID relative to its
+     *  first parent, or null if there are too many to filter. */
+    private List<String> changedPaths(String id) {
+        Commit commit = readCommit(id);
+        String parent = commit.parent();
+        return trees.changedPaths(parent == null ? null
+                                  : readCommit(parent).tree(),
+                                  commit.tree(), BloomFilter.MAX_PATHS);
+    }
+
+    /** Return the remote named NAME. */
+    private Remote remote(String name) {
+        File remote = join(REMOTES_DIR, name);
+        if (!txn.refExists(remote)) {
+            throw error("A remote with that name does not exist.");
+        }
+        File dir = new File(txn.readRef(remote));
+        return new Remote(dir.isAbsolute() ? dir : join(CWD, dir.getPath()),
+                          trace);
+    }
+
+    /** Return the names of all branches, in lexicographic order.  The
+     *  branches fetched from a remote R are named R/BRANCH, and kept in
+     *  subdirectory R of REFS_DIR. */
+    private Set<String> branches() {
+        TreeSet<String> result = new TreeSet<>();
+        addBranches(REFS_DIR, "", result);
+        return result;
+    }
+
+    /** Add to RESULT the names of the refs in DIR and its subdirectories,
+     *  each prefixed by PREFIX. */
+    private static void addBranches(File dir, String prefix,
+                                    Set<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile()) {
+                result.add(prefix + file.getName());
+            } else if (file.isDirectory()) {
+                addBranches(file, prefix + file.getName() + "/", result);
+            }
+        }
+    }
+
+    /** Return the name of the current branch. */
+    private String currentBranch() {
+        return txn.readRef(HEAD_FILE);
+    }
+
+    /** Return the id of the head commit. */
+    private String headId() {
+        return txn.readRef(join(REFS_DIR, currentBranch()));
+    }
+
+    /** Return the head commit. */
+    private Commit headCommit() {
+        return readCommit(headId());
+    }
+
+    /** Move the current branch to the commit with id ID. */
+    private void setHeadId(String id) {
+        txn.writeRef(join(REFS_DIR, currentBranch()), id);
+    }
+
+    /** Return the stat cache, reading it if needed. */
+    private StatCache statCache() {
+        if (statCache == null) {
+            statCache = StatCache.read(STAT_CACHE_FILE, trace);
+        }
+        return statCache;
+    }
 
-    /* TODO: fill in the rest of this class. */
+    /** Return the staging area, reading it if needed. */
+    private StagingArea stage() {
+        if (stage == null) {
+            stage = StagingArea.decode(trace.readContents(INDEX_FILE));
+        }
+        return stage;
+    }
 }
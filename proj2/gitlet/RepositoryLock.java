@@ -0,0 +1,224 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/** A lock on a gitlet repository, held for the duration of one command so
+ *  that gitlet processes running at once in the same repository do not
+ *  interfere.  Commands that change the repository hold the lock
+ *  exclusively; commands that only read it (log, status, and so on) share
+ *  it, and so may run together.  The lock is an operating-system lock on
+ *  the file lock in the .gitlet directory, obtained by polling
+ *  FileChannel.tryLock for at most the time given by the repository's
+ *  LOCK_TIMEOUT_SETTING.
+ *
+ *  Since the operating system releases the lock when its holder exits, a
+ *  lock is never left held by a process that has died.  To recognize
+ *  what such a process left behind, an exclusive holder records its
+ *  process id in the lock file and clears it on release.  A process that
+ *  obtains the lock exclusively and finds an id there knows that its
+ *  previous holder stopped in the middle of a command, and discards the
+ *  temporary files of that command's Transaction and CheckoutPlan.  Any
+ *  working files that the CheckoutPlan had moved aside are kept, since
+ *  they may be the only copies; their directory is renamed out of the
+ *  way of later checkouts and reported to the user.  A command that gives up waiting names the recorded holder if that
+ *  process is still running.
+ */
+class RepositoryLock implements AutoCloseable {
+
+    /** Longest pause between attempts to take the lock, in ms. */
+    private static final long MAX_POLL_MS = 50;
+
+    /** The open lock file. */
+    private final FileChannel channel;
+    /** The lock held on channel. */
+    private final FileLock lock;
+
+    /** A lock LOCK held on CHANNEL. */
+    private RepositoryLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /** Return a lock on the repository whose .gitlet directory is DIR,
+     *  shared with other readers iff SHARED, or null if there is no such
+     *  directory (so that there is nothing yet to protect).  Throws a
+     *  GitletException if the lock cannot be had within the repository's
+     *  lock timeout. */
+    static RepositoryLock acquire(File dir, boolean shared) {
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        long timeout = Repository.lockTimeout(file(dir,
+                                                   Repository.CONFIG_FILE));
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file(dir, Repository.LOCK_FILE)
+                                       .toPath(),
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+            FileLock lock = poll(channel, shared, timeout);
+            if (lock == null) {
+                String holder = holder(channel);
+                throw error("Another gitlet command %sis using this "
+                            + "repository.",
+                            alive(holder) ? "(process " + holder + ") "
+                            : "");
+            }
+            RepositoryLock result = new RepositoryLock(channel, lock);
+            if (!shared) {
+                String previous = holder(channel);
+                if (!previous.isEmpty()) {
+                    clear(file(dir, Repository.TRANSACTION_DIR));
+                    recover(file(dir, Repository.SCRATCH_DIR), previous);
+                }
+                result.record(Long.toString(ProcessHandle.current().pid()));
+            }
+            channel = null;
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException excp) {
+                    /* Ignore, preserving the original failure. */
+                }
+            }
+        }
+    }
+
+    /** Release the lock. */
+    @Override
+    public void close() {
+        try {
+            if (!lock.isShared()) {
+                record("");
+            }
+            channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Return a lock on CHANNEL, shared iff SHARED, taken by trying
+     *  repeatedly for up to TIMEOUT ms, or null if it could not be had.
+     *  A lock already held in this process counts as unavailable. */
+    private static FileLock poll(FileChannel channel, boolean shared,
+                                 long timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+            timeout);
+        long pause = 1;
+        while (true) {
+            try {
+                FileLock lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException excp) {
+                return null;
+            }
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return null;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(
+                    left, TimeUnit.MILLISECONDS.toNanos(pause)));
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            pause = Math.min(2 * pause, MAX_POLL_MS);
+        }
+    }
+
+    /** Return the process id recorded in the lock file CHANNEL, or "" if
+     *  there is none. */
+    private static String holder(FileChannel channel) throws IOException {
+        ByteBuffer contents = ByteBuffer.allocate((int) Math.min(
+            channel.size(), 64));
+        while (contents.hasRemaining()
+               && channel.read(contents, contents.position()) > 0) {
+            continue;
+        }
+        return new String(contents.array(), 0, contents.position(),
+                          StandardCharsets.UTF_8).strip();
+    }
+
+    /** Return true iff HOLDER is the id of a running process. */
+    private static boolean alive(String holder) {
+        return holder.matches("\\d{1,18}")
+            && ProcessHandle.of(Long.parseLong(holder)).isPresent();
+    }
+
+    /** Replace the contents of the lock file with HOLDER. */
+    private void record(String holder) throws IOException {
+        channel.truncate(0);
+        ByteBuffer contents = ByteBuffer.wrap(
+            holder.getBytes(StandardCharsets.UTF_8));
+        while (contents.hasRemaining()) {
+            channel.write(contents, contents.position());
+        }
+    }
+
+    /** Delete the files in DIR, if it exists. */
+    private static void clear(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Delete the temporary files that the CheckoutPlan of the
+     *  interrupted process HOLDER left in SCRATCH.  If that plan had also
+     *  moved working files aside into SCRATCH, rename SCRATCH to the
+     *  first unused name of the form SCRATCH.N, so that no later plan
+     *  overwrites them, and tell the user where they are. */
+    private static void recover(File scratch, String holder) {
+        File[] files = scratch.listFiles();
+        if (files == null) {
+            return;
+        }
+        boolean kept = false;
+        for (File file : files) {
+            if (file.getName().startsWith(CheckoutPlan.BACKUP_PREFIX)) {
+                kept = true;
+            } else {
+                file.delete();
+            }
+        }
+        if (kept) {
+            int n = 1;
+            while (new File(scratch.getPath() + "." + n).exists()) {
+                n += 1;
+            }
+            File saved = new File(scratch.getPath() + "." + n);
+            if (!scratch.renameTo(saved)) {
+                saved = scratch;
+            }
+            message("An interrupted gitlet command (process %s) left "
+                    + "working files it had moved aside in %s.",
+                    holder, saved);
+        }
+    }
+
+    /** Return the file in the .gitlet directory DIR corresponding to
+     *  LOCAL, a file in the current repository's .gitlet directory. */
+    private static File file(File dir, File local) {
+        return join(dir, local.getName());
+    }
+}
@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The gitlet staging area: the files staged for addition, with the ids of
+ *  the blobs holding their staged contents, and the files staged for
+ *  removal.  It is saved in the .gitlet directory (see encode) between
+ *  commands and cleared by each commit.
+ */
+class StagingArea implements Dumpable {
+
+    /** Kind tag of an encoded staging area. */
+    static final byte TAG = 'S';
+    /** Current version of the staging-area encoding. */
+    static final byte VERSION = 1;
+
+    /** Maps the names of files staged for addition to their blob ids. */
+    private final TreeMap<String, String> added = new TreeMap<>();
+    /** The names of files staged for removal. */
+    private final TreeSet<String> removed = new TreeSet<>();
+    /** True iff a file has been staged or unstaged since I was created or
+     *  read, so that the index file is out of date. */
+    private boolean changed;
+
+    /** Return the mapping of names of files staged for addition to their
+     *  blob ids. */
+    Map<String, String> added() {
+        return added;
+    }
+
+    /** Return the names of files staged for removal. */
+    Set<String> removed() {
+        return removed;
+    }
+
+    /** Return true iff nothing is staged. */
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /** Return true iff a file has been staged or unstaged since I was
+     *  created or read. */
+    boolean changed() {
+        return changed;
+    }
+
+    /** Stage NAME for addition with contents BLOBID, cancelling any staged
+     *  removal. */
+    void add(String name, String blobId) {
+        removed.remove(name);
+        added.put(name, blobId);
+        changed = true;
+    }
+
+    /** Stage NAME for removal, cancelling any staged addition. */
+    void remove(String name) {
+        added.remove(name);
+        removed.add(name);
+        changed = true;
+    }
+
+    /** Cancel any staged addition or removal of NAME. */
+    void unstage(String name) {
+        changed |= added.remove(name) != null | removed.remove(name);
+    }
+
+    /** Unstage everything. */
+    void clear() {
+        changed |= !isEmpty();
+        added.clear();
+        removed.clear();
+    }
+
+    /** Return my encoding:
+     *
+     *      TAG VERSION
+     *      added count (varint)  (file name (string)  blob id)...
+     *      removed count (varint)  (file name (string))...
+     *
+     *  where files appear in order of name. */
+    byte[] encode() {
+        Encoder out = new Encoder(TAG, VERSION);
+        out.writeVarint(added.size());
+        for (Map.Entry<String, String> e : added.entrySet()) {
+            out.writeString(e.getKey()).writeId(e.getValue());
+        }
+        out.writeVarint(removed.size());
+        removed.forEach(out::writeString);
+        return out.toByteArray();
+    }
+
+    /** Return the staging area whose encoding is DATA. */
+    static StagingArea decode(byte[] data) {
+        Decoder in = new Decoder(data, TAG, VERSION);
+        StagingArea result = new StagingArea();
+        for (int n = in.readLength(); n > 0; n -= 1) {
+            String name = in.readString();
+            result.added.put(name, in.readId());
+        }
+        for (int n = in.readLength(); n > 0; n -= 1) {
+            result.removed.add(in.readString());
+        }
+        return result;
+    }
+
+    @Override
+    public void dump() {
+        System.out.printf("added: %s%nremoved: %s%n", added, removed);
+    }
+}
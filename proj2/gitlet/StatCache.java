@@ -0,0 +1,304 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/** A cache of the blob ids of working files, keyed by file name.  Each
+ *  entry also records the modification time, size, and file key (device
+ *  and inode, where the platform provides them) that the file had when
+ *  it was hashed.  As long as a file still has the same metadata, its
+ *  cached id is returned without reading it, so that commands that
+ *  compare the working directory with a commit need only hash files
+ *  that have changed since the last command.
+ *
+ *  As in Git's index, an entry whose file was modified no earlier than
+ *  the cache itself was last written is "racily clean": the file could
+ *  have been changed again within the resolution of the file system's
+ *  clock without changing its metadata, so such entries are always
+ *  re-hashed.
+ *
+ *  The ids of many files may be looked up at once (see blobIds), in which
+ *  case the files are examined and hashed in parallel by a fork-join pool
+ *  of at most MAX_THREADS threads, so that a scan of a large working
+ *  directory keeps several cores and outstanding reads busy.
+ *
+ *  The cache is saved in the .gitlet directory (see encode) between
+ *  commands.
+ */
+class StatCache implements Dumpable {
+
+    /** Kind tag of an encoded stat cache. */
+    static final byte TAG = 'K';
+    /** Current version of the stat-cache encoding. */
+    static final byte VERSION = 1;
+
+    /** The largest number of threads used to examine files. */
+    private static final int MAX_THREADS = 8;
+    /** Batches of fewer files than this are examined by the calling thread
+     *  alone. */
+    private static final int PARALLEL_THRESHOLD = 16;
+
+    /** Entries by file name. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /** Modification time (ns) of the file from which I was read; entries
+     *  modified at or after this time are not trusted. */
+    private long racyLimit = Long.MIN_VALUE;
+    /** True iff a file has been hashed anew since I was read, so that
+     *  writing me back would save hashing it again. */
+    private boolean changed;
+    /** Records the reading of the cache and the hashing of files. */
+    private final Trace trace;
+
+    /** An empty cache whose work is recorded in TRACE. */
+    private StatCache(Trace trace) {
+        this.trace = trace;
+    }
+
+    /** Return the cache stored in FILE, or an empty cache if there is
+     *  none or it is in another format.  Since every entry can be
+     *  recomputed, losing the cache costs only time.  The cache's work is
+     *  recorded in TRACE. */
+    static StatCache read(File file, Trace trace) {
+        if (!file.isFile()) {
+            return new StatCache(trace);
+        }
+        byte[] data = trace.readContents(file);
+        if (data.length < 2 || data[0] != TAG || data[1] != VERSION) {
+            /* Written by a gitlet that serialized the cache, or that
+             * used another version of the encoding: start afresh. */
+            return new StatCache(trace);
+        }
+        StatCache result = decode(data, trace);
+        try {
+            result.racyLimit = Files.getLastModifiedTime(file.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return result;
+    }
+
+    /** Return my encoding:
+     *
+     *      TAG VERSION
+     *      entry count (varint)
+     *      (file name (string)  mtime (varint)  size (varint)
+     *       file key (string)  blob id)...
+     *
+     *  where files appear in order of name, and a missing file key is
+     *  written as the empty string. */
+    byte[] encode() {
+        Encoder out = new Encoder(TAG, VERSION);
+        out.writeVarint(entries.size());
+        entries.forEach((name, e) ->
+            out.writeString(name).writeVarint(e.mtime).writeVarint(e.size)
+                .writeString(e.fileKey == null ? "" : e.fileKey)
+                .writeId(e.blobId));
+        return out.toByteArray();
+    }
+
+    /** Return the cache whose encoding is DATA, whose work is recorded in
+     *  TRACE. */
+    static StatCache decode(byte[] data, Trace trace) {
+        Decoder in = new Decoder(data, TAG, VERSION);
+        StatCache result = new StatCache(trace);
+        for (int n = in.readLength(); n > 0; n -= 1) {
+            String name = in.readString();
+            long mtime = in.readVarint();
+            long size = in.readVarint();
+            String fileKey = in.readString();
+            result.entries.put(name,
+                               new Entry(mtime, size,
+                                         fileKey.isEmpty() ? null : fileKey,
+                                         in.readId()));
+        }
+        return result;
+    }
+
+    /** Return true iff I hold entries that the stored cache lacks. */
+    boolean changed() {
+        return changed;
+    }
+
+    /** Return the SHA-1 id of the contents of FILE, which is the working
+     *  file named NAME, hashing it only if its metadata differ from those
+     *  recorded when it was last hashed. */
+    String blobId(String name, File file) {
+        Entry entry = lookup(name, file);
+        if (entry != entries.get(name)) {
+            update(name, entry);
+        }
+        return entry.blobId;
+    }
+
+    /** Return a map from each name in FILES to the SHA-1 id of the
+     *  contents of the corresponding working file, as for blobId.  Large
+     *  batches are examined in parallel. */
+    TreeMap<String, String> blobIds(Map<String, File> files) {
+        List<String> names = new ArrayList<>(files.keySet());
+        Entry[] found = new Entry[names.size()];
+        IntConsumer examine = i ->
+            found[i] = lookup(names.get(i), files.get(names.get(i)));
+        if (names.size() < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < names.size(); i += 1) {
+                examine.accept(i);
+            }
+        } else {
+            ForkJoinPool pool =
+                new ForkJoinPool(Math.min(MAX_THREADS, names.size()));
+            try {
+                pool.submit(() -> IntStream.range(0, names.size()).parallel()
+                            .forEach(examine)).get();
+            } catch (ExecutionException excp) {
+                Throwable cause = excp.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalArgumentException(cause);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException(excp);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int i = 0; i < names.size(); i += 1) {
+            if (found[i] != entries.get(names.get(i))) {
+                update(names.get(i), found[i]);
+            }
+            result.put(names.get(i), found[i].blobId);
+        }
+        return result;
+    }
+
+    /** Return a map from names in MISSING, whose working files no longer
+     *  exist, to the names in PRESENT to which those same files have been
+     *  moved.  MISSING maps each name to the blob id that its file should
+     *  have had, and PRESENT maps names to their working files.  A moved
+     *  file keeps its file key, size, and modification time, so it is
+     *  recognized by those without being read, provided that its entry
+     *  shows that it had the expected contents.  The moved files get
+     *  entries under their new names. */
+    TreeMap<String, String> moves(Map<String, String> missing,
+                                  Map<String, File> present) {
+        HashMap<String, String> byStat = new HashMap<>();
+        missing.forEach((name, blobId) -> {
+            Entry cached = entries.get(name);
+            if (cached != null && cached.fileKey != null
+                && cached.mtime < racyLimit && cached.blobId.equals(blobId)) {
+                byStat.put(cached.statKey(), name);
+            }
+        });
+        TreeMap<String, String> result = new TreeMap<>();
+        if (byStat.isEmpty()) {
+            return result;
+        }
+        present.forEach((name, file) -> {
+            Entry stat = Entry.of(file, null);
+            String source = byStat.remove(stat.statKey());
+            if (source != null) {
+                result.put(source, name);
+                update(name, new Entry(stat.mtime, stat.size, stat.fileKey,
+                                       entries.get(source).blobId));
+            }
+        });
+        return result;
+    }
+
+    /** Record that FILE, the working file named NAME, has just been
+     *  written with the contents of blob BLOBID. */
+    void record(String name, File file, String blobId) {
+        update(name, Entry.of(file, blobId));
+    }
+
+    /** Return the entry for FILE, the working file named NAME: the cached
+     *  one if it is still valid, and otherwise a new one made by hashing
+     *  FILE.  Does not change the cache, so that it may be called from
+     *  several threads at once. */
+    private Entry lookup(String name, File file) {
+        Entry stat = Entry.of(file, null);
+        Entry cached = entries.get(name);
+        if (cached != null && cached.sameFile(stat)
+            && cached.mtime < racyLimit) {
+            return cached;
+        }
+        return new Entry(stat.mtime, stat.size, stat.fileKey,
+                         trace.sha1(file));
+    }
+
+    /** Set the entry for NAME to STAT. */
+    private void update(String name, Entry stat) {
+        entries.put(name, stat);
+        changed = true;
+    }
+
+    @Override
+    public void dump() {
+        entries.forEach((name, e) ->
+            System.out.printf("%s: %s mtime=%d size=%d key=%s%n",
+                              name, e.blobId, e.mtime, e.size, e.fileKey));
+    }
+
+    /** The metadata and blob id of one working file. */
+    private static class Entry {
+        /** Modification time in nanoseconds. */
+        private final long mtime;
+        /** Size in bytes. */
+        private final long size;
+        /** Printed form of the file key, or null if there is none. */
+        private final String fileKey;
+        /** SHA-1 id of the contents. */
+        private final String blobId;
+
+        /** An entry with the given MTIME, SIZE, FILEKEY, and BLOBID. */
+        Entry(long mtime, long size, String fileKey, String blobId) {
+            this.mtime = mtime;
+            this.size = size;
+            this.fileKey = fileKey;
+            this.blobId = blobId;
+        }
+
+        /** Return the current metadata of FILE with blob id BLOBID. */
+        static Entry of(File file, String blobId) {
+            try {
+                BasicFileAttributes attrs =
+                    Files.readAttributes(file.toPath(),
+                                         BasicFileAttributes.class);
+                Object key = attrs.fileKey();
+                return new Entry(attrs.lastModifiedTime()
+                                 .to(TimeUnit.NANOSECONDS),
+                                 attrs.size(),
+                                 key == null ? null : key.toString(),
+                                 blobId);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+
+        /** Return true iff OTHER has the same metadata as I. */
+        boolean sameFile(Entry other) {
+            return mtime == other.mtime && size == other.size
+                && Objects.equals(fileKey, other.fileKey);
+        }
+
+        /** Return a string that is the same for entries with the same
+         *  metadata. */
+        String statKey() {
+            return fileKey + " " + size + " " + mtime;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+
+/** Counts and timings of the operations on the hot paths of gitlet
+ *  commands, for finding out where a slow command spends its time.
+ *  Tracing is turned on by setting the environment variable
+ *  TRACE_VARIABLE.  For each kind of operation (hashing, reading and
+ *  writing files, loading objects from the pack, serializing and
+ *  deserializing, and listing directories), a trace records how many
+ *  were done, on how many bytes, and in how much time.  After each
+ *  command, report prints these and the command's wall time to the
+ *  standard error: as one JSON object if TRACE_VARIABLE is "json", and
+ *  otherwise as one summary line.
+ *
+ *  The components of a Repository share its trace and route their
+ *  operations through it, either by calling the methods below that wrap
+ *  those of Utils, or by timing their own work with start and end.  When
+ *  tracing is off, those do nothing beyond the operations themselves.
+ *  A trace may be used from several threads at once.
+ */
+class Trace {
+
+    /** The environment variable that, if set, turns on tracing. */
+    static final String TRACE_VARIABLE = "GITLET_TRACE";
+    /** The value of TRACE_VARIABLE that selects JSON output. */
+    private static final String JSON_MODE = "json";
+
+    /** Kinds of operation: hashing contents. */
+    static final int HASH = 0;
+    /** Reading a file whole. */
+    static final int READ = 1;
+    /** Writing a file. */
+    static final int WRITE = 2;
+    /** Loading an object from the object store. */
+    static final int LOAD = 3;
+    /** Deserializing an object. */
+    static final int DESERIALIZE = 4;
+    /** Serializing an object. */
+    static final int SERIALIZE = 5;
+    /** Listing a directory. */
+    static final int LIST = 6;
+    /** The names of the kinds of operation, in order, separated by
+     *  blanks. */
+    private static final String KINDS =
+        "hash read write load deserialize serialize list";
+    /** The number of kinds of operation. */
+    private static final int NUM_KINDS = 7;
+
+    /** True iff tracing is on. */
+    private final boolean enabled;
+    /** True iff reports are in JSON. */
+    private final boolean json;
+    /** Number of operations of each kind since the last report. */
+    private final long[] counts = new long[NUM_KINDS];
+    /** Bytes handled by operations of each kind since the last report. */
+    private final long[] bytes = new long[NUM_KINDS];
+    /** Time (ns) taken by operations of each kind since the last
+     *  report. */
+    private final long[] nanos = new long[NUM_KINDS];
+    /** Time (ns) of my creation or of the last report. */
+    private long begin = System.nanoTime();
+
+    /** A trace that is off if MODE, the value of TRACE_VARIABLE, is null,
+     *  and otherwise reports as MODE selects. */
+    Trace(String mode) {
+        enabled = mode != null;
+        json = JSON_MODE.equals(mode);
+    }
+
+    /** Return the start time to pass to end for an operation about to
+     *  begin. */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record an operation of kind KIND, begun at START (as returned by
+     *  start), that has just finished after handling SIZE bytes. */
+    void end(int kind, long start, long size) {
+        if (enabled) {
+            long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                counts[kind] += 1;
+                bytes[kind] += size;
+                nanos[kind] += elapsed;
+            }
+        }
+    }
+
+    /** As for Utils.sha1, recording a HASH of DATA. */
+    String sha1(byte[] data) {
+        long start = start();
+        String result = Utils.sha1(data);
+        end(HASH, start, data.length);
+        return result;
+    }
+
+    /** As for Utils.sha1, recording a HASH of the contents of FILE. */
+    String sha1(File file) {
+        long start = start();
+        String result = Utils.sha1(file);
+        end(HASH, start, enabled ? file.length() : 0);
+        return result;
+    }
+
+    /** As for Utils.readContents, recording a READ of FILE. */
+    byte[] readContents(File file) {
+        long start = start();
+        byte[] result = Utils.readContents(file);
+        end(READ, start, result.length);
+        return result;
+    }
+
+    /** As for Utils.plainFilenamesIn, recording a LIST of DIR. */
+    List<String> plainFilenamesIn(File dir) {
+        long start = start();
+        List<String> result = Utils.plainFilenamesIn(dir);
+        end(LIST, start, 0);
+        return result;
+    }
+
+    /** As for Utils.plainFilenamesUnder, recording a LIST of DIR. */
+    List<String> plainFilenamesUnder(File dir) {
+        long start = start();
+        List<String> result = Utils.plainFilenamesUnder(dir);
+        end(LIST, start, 0);
+        return result;
+    }
+
+    /** If tracing is on, print what was recorded since the last report
+     *  for the command named COMMAND to the standard error, and start
+     *  recording anew. */
+    synchronized void report(String command) {
+        if (!enabled) {
+            return;
+        }
+        long wall = System.nanoTime() - begin;
+        String[] kinds = KINDS.split(" ");
+        StringBuilder out = new StringBuilder();
+        if (json) {
+            out.append(String.format("{\"command\": \"%s\", \"wall_ns\": %d",
+                                     command, wall));
+            for (int k = 0; k < NUM_KINDS; k += 1) {
+                out.append(String.format(", \"%s\": {\"count\": %d, "
+                                         + "\"bytes\": %d, \"ns\": %d}",
+                                         kinds[k], counts[k], bytes[k],
+                                         nanos[k]));
+            }
+            out.append("}");
+        } else {
+            out.append(String.format("trace %s: %.3f ms", command,
+                                     wall / 1e6));
+            for (int k = 0; k < NUM_KINDS; k += 1) {
+                if (counts[k] > 0) {
+                    out.append(String.format("; %s %d (%d bytes, %.3f ms)",
+                                             kinds[k], counts[k], bytes[k],
+                                             nanos[k] / 1e6));
+                }
+            }
+        }
+        System.err.println(out);
+        for (int k = 0; k < NUM_KINDS; k += 1) {
+            counts[k] = bytes[k] = nanos[k] = 0;
+        }
+        begin = System.nanoTime();
+    }
+}
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** The files written by one gitlet command, made durable together.  Files
+ *  that a command replaces are not written in place.  Their new contents
+ *  are held until commit, which writes each to a temporary file in a
+ *  scratch directory and then renames them over their targets: first the
+ *  data files (the object index, the staging area, and so on), then any
+ *  complete files written elsewhere (such as a repacked pack), then the
+ *  refs (branch heads and HEAD), and last the files registered with
+ *  writeLast (the staging area).  So a crash at any point leaves every
+ *  ref naming a commit whose objects and index entries are already on
+ *  disk, and never leaves a staging area emptied by a commit whose refs
+ *  were not yet written.  Files to which a command appends (such as the pack) are written
+ *  directly, and only registered here.
+ *
+ *  If the transaction is synchronous, commit forces each appended and
+ *  temporary file to disk once, before any rename, and then forces the
+ *  directories of the renamed files, so that the number of forced writes
+ *  depends on the number of files the command touched and not on the
+ *  number of objects it stored.  The refs that a transaction will write
+ *  are visible to readRef and refExists before commit.
+ */
+class Transaction {
+
+    /** Directory for the temporary files. */
+    private final File scratch;
+    /** True iff commit forces its writes to disk. */
+    private final boolean sync;
+    /** Records the writing of temporary files. */
+    private final Trace trace;
+    /** New contents of the data files to be replaced. */
+    private final LinkedHashMap<File, ByteBuffer> writes =
+        new LinkedHashMap<>();
+    /** New contents of the refs to be replaced; a null value marks a ref
+     *  to be deleted. */
+    private final LinkedHashMap<File, String> refs = new LinkedHashMap<>();
+    /** New contents of the files to be replaced after the refs. */
+    private final LinkedHashMap<File, ByteBuffer> lastWrites =
+        new LinkedHashMap<>();
+    /** Files appended to since the last commit. */
+    private final LinkedHashSet<File> appended = new LinkedHashSet<>();
+    /** Files to be renamed, after the data files are replaced and before
+     *  the refs are, mapped to their new names. */
+    private final LinkedHashMap<File, File> renames = new LinkedHashMap<>();
+
+    /** An empty transaction whose temporary files go in SCRATCH, which
+     *  need not exist yet, which forces its writes to disk iff SYNC, and
+     *  whose writes are recorded in TRACE. */
+    Transaction(File scratch, boolean sync, Trace trace) {
+        this.scratch = scratch;
+        this.sync = sync;
+        this.trace = trace;
+    }
+
+    /** Arrange for data file FILE to be replaced by CONTENTS on commit. */
+    void write(File file, byte[] contents) {
+        write(file, ByteBuffer.wrap(contents));
+    }
+
+    /** Arrange for data file FILE to be replaced by the remaining bytes of
+     *  CONTENTS on commit.  CONTENTS must not be changed afterwards. */
+    void write(File file, ByteBuffer contents) {
+        writes.put(file, contents.duplicate());
+    }
+
+    /** Arrange for FILE to be replaced by CONTENTS on commit, after the
+     *  refs are, so that a crash cannot leave FILE describing a state
+     *  that the refs do not yet reflect. */
+    void writeLast(File file, byte[] contents) {
+        lastWrites.put(file, ByteBuffer.wrap(contents));
+    }
+
+    /** Record that data has been appended to FILE, so that commit must
+     *  force it to disk before renaming anything. */
+    void appended(File file) {
+        appended.add(file);
+    }
+
+    /** Arrange for the complete file SOURCE, which has been registered
+     *  with appended, to be renamed to TARGET on commit. */
+    void rename(File source, File target) {
+        renames.put(source, target);
+    }
+
+    /** Arrange for REF to contain CONTENTS after commit. */
+    void writeRef(File ref, String contents) {
+        refs.put(ref, contents);
+    }
+
+    /** Arrange for REF to be deleted on commit. */
+    void deleteRef(File ref) {
+        refs.put(ref, null);
+    }
+
+    /** Return true iff REF will exist after commit. */
+    boolean refExists(File ref) {
+        return refs.containsKey(ref) ? refs.get(ref) != null : ref.isFile();
+    }
+
+    /** Return the contents REF will have after commit, which must exist. */
+    String readRef(File ref) {
+        String result = refs.get(ref);
+        return result != null ? result : readContentsAsString(ref);
+    }
+
+    /** Carry out all the writes and deletions of this transaction, and
+     *  leave it empty. */
+    void commit() {
+        if (writes.isEmpty() && refs.isEmpty() && appended.isEmpty()
+            && renames.isEmpty() && lastWrites.isEmpty()) {
+            return;
+        }
+        try {
+            if (sync) {
+                for (File file : appended) {
+                    force(file.toPath(), StandardOpenOption.WRITE);
+                }
+            }
+            ArrayList<File> targets = new ArrayList<>(writes.keySet());
+            ArrayList<ByteBuffer> contents = new ArrayList<>(writes.values());
+            refs.forEach((ref, value) -> {
+                targets.add(ref);
+                contents.add(value == null ? null
+                             : ByteBuffer.wrap(value.getBytes(
+                                 StandardCharsets.UTF_8)));
+            });
+            targets.addAll(lastWrites.keySet());
+            contents.addAll(lastWrites.values());
+            if (!targets.isEmpty()) {
+                scratch.mkdir();
+            }
+            for (int k = 0; k < targets.size(); k += 1) {
+                if (contents.get(k) != null) {
+                    writeTemporary(temporary(k), contents.get(k).duplicate());
+                }
+            }
+            LinkedHashSet<File> dirs = new LinkedHashSet<>();
+            for (int k = 0; k < writes.size(); k += 1) {
+                replace(targets.get(k), contents.get(k) == null ? null
+                        : temporary(k), dirs);
+            }
+            for (Map.Entry<File, File> e : renames.entrySet()) {
+                replace(e.getValue(), e.getKey(), dirs);
+            }
+            for (int k = writes.size(); k < targets.size(); k += 1) {
+                replace(targets.get(k), contents.get(k) == null ? null
+                        : temporary(k), dirs);
+            }
+            if (sync) {
+                for (File dir : dirs) {
+                    force(dir.toPath(), StandardOpenOption.READ);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        writes.clear();
+        renames.clear();
+        refs.clear();
+        lastWrites.clear();
+        appended.clear();
+    }
+
+    /** Replace TARGET with SOURCE, or delete TARGET if SOURCE is null,
+     *  and add TARGET's directory to DIRS. */
+    private static void replace(File target, File source, Set<File> dirs)
+        throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (source == null) {
+            Files.deleteIfExists(target.toPath());
+        } else {
+            dir.mkdirs();
+            Files.move(source.toPath(), target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        dirs.add(dir);
+    }
+
+    /** Return the temporary file for the Kth file replaced by commit.  Its
+     *  name includes the process id, since commands holding a shared
+     *  RepositoryLock may commit at the same time. */
+    private File temporary(int k) {
+        return join(scratch, ProcessHandle.current().pid() + "." + k);
+    }
+
+    /** Write CONTENTS to the new file TMP, forcing it to disk if this
+     *  transaction is synchronous. */
+    private void writeTemporary(File tmp, ByteBuffer contents)
+        throws IOException {
+        long start = trace.start();
+        int size = contents.remaining();
+        try (FileChannel out =
+                 FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (contents.hasRemaining()) {
+                out.write(contents);
+            }
+            if (sync) {
+                out.force(false);
+            }
+        }
+        trace.end(Trace.WRITE, start, size);
+    }
+
+    /** Force the file or directory at PATH, opened with MODE, to disk. */
+    private static void force(Path path, StandardOpenOption mode)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(path, mode)) {
+            channel.force(true);
+        }
+    }
+}
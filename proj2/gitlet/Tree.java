@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Represents a gitlet tree object: the contents of one directory of a
+ *  snapshot.  A tree maps the names of the files directly within its
+ *  directory to the ids of their blobs, and the names of its
+ *  subdirectories to the ids of their trees.  Like blobs and commits, a
+ *  tree is identified by the SHA-1 hash of its encoding, so that a
+ *  directory whose contents did not change between two commits is stored
+ *  once and shared by both.  Trees are never empty, except for the root
+ *  tree of a commit that tracks no files.
+ */
+class Tree implements Dumpable {
+
+    /** Kind tag of an encoded tree. */
+    static final byte TAG = 'T';
+    /** Current version of the tree encoding. */
+    static final byte VERSION = 1;
+
+    /** Maps the names of my files to their blob ids. */
+    private final TreeMap<String, String> blobs;
+    /** Maps the names of my subdirectories to their tree ids. */
+    private final TreeMap<String, String> trees;
+
+    /** A tree containing the files BLOBS and the subdirectories TREES. */
+    Tree(Map<String, String> blobs, Map<String, String> trees) {
+        this.blobs = new TreeMap<>(blobs);
+        this.trees = new TreeMap<>(trees);
+    }
+
+    /** Return the mapping of the names of my files to their blob ids. */
+    Map<String, String> blobs() {
+        return blobs;
+    }
+
+    /** Return the mapping of the names of my subdirectories to their tree
+     *  ids. */
+    Map<String, String> trees() {
+        return trees;
+    }
+
+    /** Return true iff I contain nothing. */
+    boolean isEmpty() {
+        return blobs.isEmpty() && trees.isEmpty();
+    }
+
+    /** Return my encoding:
+     *
+     *      TAG VERSION
+     *      file count (varint)  (file name (string)  blob id)...
+     *      directory count (varint)  (directory name (string)  tree id)...
+     *
+     *  where entries appear in order of name. */
+    byte[] encode() {
+        Encoder out = new Encoder(TAG, VERSION);
+        writeEntries(out, blobs);
+        writeEntries(out, trees);
+        return out.toByteArray();
+    }
+
+    /** Append the count and contents of ENTRIES to OUT. */
+    private static void writeEntries(Encoder out,
+                                     Map<String, String> entries) {
+        out.writeVarint(entries.size());
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            out.writeString(e.getKey()).writeId(e.getValue());
+        }
+    }
+
+    /** Return the tree whose encoding is DATA. */
+    static Tree decode(byte[] data) {
+        Decoder in = new Decoder(data, TAG, VERSION);
+        TreeMap<String, String> blobs = readEntries(in);
+        TreeMap<String, String> trees = readEntries(in);
+        return new Tree(blobs, trees);
+    }
+
+    /** Return the entries of one section of an encoded tree, read from
+     *  IN. */
+    private static TreeMap<String, String> readEntries(Decoder in) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int n = in.readLength(); n > 0; n -= 1) {
+            String name = in.readString();
+            result.put(name, in.readId());
+        }
+        return result;
+    }
+
+    @Override
+    public void dump() {
+        System.out.printf("blobs: %s%ntrees: %s%n", blobs, trees);
+    }
+}
@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Reads and writes the trees of a repository's snapshots.  File names
+ *  within a snapshot are paths relative to the working directory whose
+ *  components are separated by SEPARATOR; each directory is stored as a
+ *  Tree.  Updating a snapshot rewrites only the trees along the paths that
+ *  changed, and every other tree is shared with the snapshot updated.
+ */
+class TreeStore {
+
+    /** Separates the components of a path within a snapshot. */
+    static final char SEPARATOR = '/';
+    /** The largest number of decoded trees kept in memory. */
+    static final int TREE_CACHE_SIZE = 1024;
+
+    /** The object store holding the trees. */
+    private final PackStore objects;
+    /** Records the hashing and decoding of trees. */
+    private final Trace trace;
+    /** Recently decoded trees, by id. */
+    private final LruCache<String, Tree> cache =
+        new LruCache<>(TREE_CACHE_SIZE);
+
+    /** A store for trees kept in OBJECTS, whose work is recorded in
+     *  TRACE. */
+    TreeStore(PackStore objects, Trace trace) {
+        this.objects = objects;
+        this.trace = trace;
+    }
+
+    /** Return the tree with id ID. */
+    Tree read(String id) {
+        return cache.get(id, k -> {
+            byte[] data = objects.read(k);
+            long start = trace.start();
+            Tree result = Tree.decode(data);
+            trace.end(Trace.DESERIALIZE, start, data.length);
+            return result;
+        });
+    }
+
+    /** Store TREE and return its id. */
+    String write(Tree tree) {
+        byte[] data = tree.encode();
+        String id = trace.sha1(data);
+        objects.write(id, PackStore.TREE, data);
+        return id;
+    }
+
+    /** Return the id of the blob stored as PATH in the snapshot whose root
+     *  tree is ROOT, or null if there is none.  Only the trees along PATH
+     *  are read. */
+    String blob(String root, String path) {
+        Tree tree = read(root);
+        int start = 0;
+        for (int sep = path.indexOf(SEPARATOR); sep >= 0;
+             sep = path.indexOf(SEPARATOR, start)) {
+            String sub = tree.trees().get(path.substring(start, sep));
+            if (sub == null) {
+                return null;
+            }
+            tree = read(sub);
+            start = sep + 1;
+        }
+        return tree.blobs().get(path.substring(start));
+    }
+
+    /** Return the mapping of every path in the snapshot whose root tree is
+     *  ROOT to the id of its blob, in order of path.  The result is a
+     *  fresh map that the caller may modify. */
+    TreeMap<String, String> files(String root) {
+        TreeMap<String, String> result = new TreeMap<>();
+        addFiles(root, "", result);
+        return result;
+    }
+
+    /** Return the paths whose blobs differ between the snapshots whose
+     *  root trees are OLDROOT and NEWROOT, where a null OLDROOT denotes the
+     *  empty snapshot, or null if there are more than LIMIT of them.  Only
+     *  the trees that differ between the two snapshots are read. */
+    List<String> changedPaths(String oldRoot, String newRoot, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        return addChanges(oldRoot, newRoot, "", limit, result) ? result
+            : null;
+    }
+
+    /** Return the id of the root tree of the snapshot that results from
+     *  applying CHANGES to the snapshot whose root tree is ROOT.  CHANGES
+     *  maps paths to the ids of their new blobs, or to null for paths to
+     *  be removed. */
+    String update(String root, SortedMap<String, String> changes) {
+        String result = update(read(root), changes);
+        return result == null ? write(new Tree(Map.of(), Map.of())) : result;
+    }
+
+    /** Add the files in the tree with id ID, whose directory's path
+     *  (ending in SEPARATOR, or empty for the root) is PREFIX, to
+     *  RESULT. */
+    private void addFiles(String id, String prefix,
+                          Map<String, String> result) {
+        Tree tree = read(id);
+        tree.blobs().forEach((name, blob) -> result.put(prefix + name, blob));
+        tree.trees().forEach((name, sub) ->
+            addFiles(sub, prefix + name + SEPARATOR, result));
+    }
+
+    /** Add to RESULT the paths whose blobs differ between the trees with
+     *  ids OLDID and NEWID, either of which may be null for an empty
+     *  tree, and whose directory's path is PREFIX (as for addFiles).
+     *  Return false, and stop, once RESULT has more than LIMIT
+     *  elements. */
+    private boolean addChanges(String oldId, String newId, String prefix,
+                               int limit, List<String> result) {
+        if (Objects.equals(oldId, newId)) {
+            return true;
+        }
+        Tree empty = new Tree(Map.of(), Map.of());
+        Tree old = oldId == null ? empty : read(oldId),
+            now = newId == null ? empty : read(newId);
+        TreeSet<String> names = new TreeSet<>(old.blobs().keySet());
+        names.addAll(now.blobs().keySet());
+        for (String name : names) {
+            if (!Objects.equals(old.blobs().get(name),
+                                now.blobs().get(name))) {
+                result.add(prefix + name);
+            }
+        }
+        if (result.size() > limit) {
+            return false;
+        }
+        names = new TreeSet<>(old.trees().keySet());
+        names.addAll(now.trees().keySet());
+        for (String name : names) {
+            if (!addChanges(old.trees().get(name), now.trees().get(name),
+                            prefix + name + SEPARATOR, limit, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the id of the tree that results from applying CHANGES, whose
+     *  paths are relative to the directory of TREE, to TREE, which is null
+     *  if the directory does not yet exist.  Returns null if the result is
+     *  empty. */
+    private String update(Tree tree, SortedMap<String, String> changes) {
+        TreeMap<String, String> blobs = new TreeMap<>(),
+            trees = new TreeMap<>();
+        if (tree != null) {
+            blobs.putAll(tree.blobs());
+            trees.putAll(tree.trees());
+        }
+        while (!changes.isEmpty()) {
+            String path = changes.firstKey();
+            int sep = path.indexOf(SEPARATOR);
+            if (sep < 0) {
+                String blob = changes.get(path);
+                if (blob == null) {
+                    blobs.remove(path);
+                } else {
+                    blobs.put(path, blob);
+                    trees.remove(path);
+                }
+                changes = changes.tailMap(path + "\0");
+                continue;
+            }
+            String dir = path.substring(0, sep + 1);
+            String end = path.substring(0, sep) + (char) (SEPARATOR + 1);
+            TreeMap<String, String> subchanges = new TreeMap<>();
+            changes.subMap(dir, end).forEach((p, blob) ->
+                subchanges.put(p.substring(dir.length()), blob));
+            String name = path.substring(0, sep);
+            String old = trees.get(name);
+            String sub = update(old == null ? null : read(old), subchanges);
+            if (sub == null) {
+                trees.remove(name);
+            } else {
+                trees.put(name, sub);
+                blobs.remove(name);
+            }
+            changes = changes.tailMap(end);
+        }
+        if (blobs.isEmpty() && trees.isEmpty()) {
+            return null;
+        }
+        return write(new Tree(blobs, trees));
+    }
+}
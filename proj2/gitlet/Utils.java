@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,12 +10,17 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 
@@ -31,38 +37,107 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** The hexadecimal digits, in order. */
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    /** The size of the buffer through which sha1(File) reads. */
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
     /* SHA-1 HASH VALUES. */
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return hexDigest(md);
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  This is the same as sha1(readContents(FILE)), but
+     *  reads FILE through a fixed-size buffer, so that the space it needs
+     *  does not depend on the size of FILE.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = sha1Digest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
             }
-            return result.toString();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return hexDigest(md);
+    }
+
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns the digest computed by MD as a hexadecimal numeral. */
+    static String hexDigest(MessageDigest md) {
+        Formatter result = new Formatter();
+        for (byte b : md.digest()) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Return the UID_LENGTH / 2 raw bytes denoted by the hexadecimal
+     *  SHA-1 UID ID. */
+    static byte[] uidToBytes(String id) {
+        if (id.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("malformed id: " + id);
+        }
+        byte[] result = new byte[UID_LENGTH / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(id.charAt(2 * i), 16),
+                lo = Character.digit(id.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("malformed id: " + id);
+            }
+            result[i] = (byte) (hi << 4 | lo);
+        }
+        return result;
+    }
+
+    /** Return the hexadecimal UID denoted by the LEN raw bytes of BYTES
+     *  starting at OFFSET. */
+    static String bytesToUid(byte[] bytes, int offset, int len) {
+        char[] result = new char[2 * len];
+        for (int i = 0; i < len; i += 1) {
+            result[2 * i] = HEX_DIGITS.charAt((bytes[offset + i] >> 4) & 0xf);
+            result[2 * i + 1] = HEX_DIGITS.charAt(bytes[offset + i] & 0xf);
+        }
+        return new String(result);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -88,6 +163,28 @@ class Utils {
         return restrictedDelete(new File(file));
     }
 
+    /** Deletes the file whose path relative to the directory DIR is NAME,
+     *  if it exists and is not a directory, and then deletes each
+     *  directory between it and DIR that is left empty.  Returns true if
+     *  the file was deleted, and false otherwise.  Refuses to delete
+     *  anything and throws IllegalArgumentException unless DIR contains a
+     *  directory named .gitlet. */
+    static boolean restrictedDelete(File dir, String name) {
+        if (!(new File(dir, ".gitlet")).isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working "
+                                               + "directory");
+        }
+        File file = join(dir, name);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        File parent = file.getParentFile();
+        while (!parent.equals(dir) && parent.delete()) {
+            parent = parent.getParentFile();
+        }
+        return true;
+    }
+
     /* READING AND WRITING FILE CONTENTS */
 
     /** Return the entire contents of FILE as a byte array.  FILE must
@@ -188,6 +285,39 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns a list of the paths, relative to DIR and with components
+     *  separated by '/', of all plain files in the tree of directories
+     *  rooted at DIR, other than those under directories named .gitlet,
+     *  in lexicographic order as Java Strings.  Returns null if DIR does
+     *  not denote a directory. */
+    static List<String> plainFilenamesUnder(File dir) {
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        ArrayList<String> result = new ArrayList<>();
+        addPlainFilenamesUnder(dir, "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Add to RESULT the paths of the plain files under directory DIR, as
+     *  for plainFilenamesUnder, each preceded by PREFIX. */
+    private static void addPlainFilenamesUnder(File dir, String prefix,
+                                               List<String> result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                result.add(prefix + name);
+            } else if (file.isDirectory() && !name.equals(".gitlet")) {
+                addPlainFilenamesUnder(file, prefix + name + "/", result);
+            }
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -220,6 +350,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */